@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Point-to-point shortest path search that runs a breadth-first search from
+ * both ends and stops when the two meet. Each step expands one whole level
+ * of whichever side has the smaller frontier, so on a small-diameter social
+ * graph the search touches a tiny fraction of the vertices a one-sided
+ * search would. If either side runs out of vertices there is no path and
+ * the search ends right away.
+ * 
+ * The backward search follows the same neighbor lists as the forward one,
+ * so the graph must store every edge in both directions, as
+ * SocialNetwork.loadGraphFromDataSet() does.
+ * 
+ * An instance is not thread safe; SocialNetwork keeps one per thread.
+ */
+public class BidirectionalSearch {
+
+    private final Side forward  = new Side();
+    private final Side backward = new Side();
+    private int        epoch;
+
+
+    /**
+     * Returns the number of edges on the shortest path from source to target
+     * 
+     * @param g      the graph to search, with symmetric edges
+     * @param source the start vertex
+     * @param target the end vertex
+     * @return the distance, or Integer.MAX_VALUE if there is no path
+     */
+    public int distance(Graph g, int source, int target) {
+        reset(g.nodeCount());
+        forward.mark(source, 0);
+        if (source == target) {
+            return 0;
+        }
+        backward.mark(target, 0);
+
+        while (forward.head < forward.tail && backward.head < backward.tail) {
+            Side side = forward.frontierSize() <= backward.frontierSize()
+                    ? forward : backward;
+            int best = side.expandLevel(g);
+            if (best != Integer.MAX_VALUE) {
+                return best;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+
+    // Prepare both sides for a new search over n vertices
+    private void reset(int n) {
+        if (forward.stamp.length < n) {
+            forward.allocate(n);
+            backward.allocate(n);
+            epoch = 0;
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(forward.stamp, 0);
+            Arrays.fill(backward.stamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+        forward.clear(backward);
+        backward.clear(forward);
+    }
+
+
+    // One direction of the search
+    private final class Side implements NeighborVisitor {
+        int[] stamp = new int[0];
+        int[] dist  = new int[0];
+        int[] queue = new int[0];
+        int   head;
+        int   tail;
+        int   level;
+        int   best;
+        Side  other;
+
+
+        void allocate(int n) {
+            stamp = new int[n];
+            dist = new int[n];
+            queue = new int[n];
+        }
+
+
+        void clear(Side opposite) {
+            other = opposite;
+            head = 0;
+            tail = 0;
+        }
+
+
+        void mark(int v, int d) {
+            stamp[v] = epoch;
+            dist[v] = d;
+            queue[tail++] = v;
+        }
+
+
+        // Number of vertices waiting in the current level
+        int frontierSize() {
+            return tail - head;
+        }
+
+
+        // Expand every vertex of the current level; return the shortest
+        // meeting distance found, or Integer.MAX_VALUE if the sides did
+        // not meet
+        int expandLevel(Graph g) {
+            best = Integer.MAX_VALUE;
+            int levelEnd = tail;
+            while (head < levelEnd) {
+                int node = queue[head++];
+                level = dist[node];
+                g.forEachNeighbor(node, this);
+            }
+            return best;
+        }
+
+
+        @Override
+        public boolean visit(int w, int wgt) {
+            if (stamp[w] == epoch) {
+                return true;
+            }
+            if (other.stamp[w] == epoch) {
+                best = Math.min(best, level + 1 + other.dist[w]);
+            } else {
+                mark(w, level + 1);
+            }
+            return true;
+        }
+    }
+}
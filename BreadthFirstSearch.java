@@ -0,0 +1,258 @@
+import java.util.Arrays;
+
+/**
+ * A reusable breadth-first search over the vertex indices of a Graph.
+ * 
+ * All bookkeeping lives in primitive arrays sized to the graph. A vertex is
+ * visited in the current search iff its stamp equals the current epoch, so
+ * starting a new search is a single increment instead of clearing the
+ * arrays. Each vertex enters the queue at most once, so the n-slot queue
+ * never wraps and, once the search is done, holds the vertices in the order
+ * they were reached.
+ * 
+ * searchDirectionOptimizing() switches between the usual top-down step and
+ * a bottom-up step in which every unvisited vertex looks for a neighbor in
+ * the current frontier (kept as a bitset) and stops at the first one. On a
+ * small-diameter graph the middle levels hold most of the vertices, and
+ * there the bottom-up step inspects far fewer edges. The switch follows
+ * Beamer et al.: go bottom-up once the frontier's edges outnumber the
+ * unexplored edges divided by ALPHA, and return to top-down once the
+ * frontier shrinks below n / BETA vertices.
+ * 
+ * An instance is not thread safe; SocialNetwork keeps one per thread so
+ * repeated queries run without allocating.
+ */
+public class BreadthFirstSearch {
+
+    static final int ALPHA = 14;
+    static final int BETA  = 24;
+
+    private int[]  stamp    = new int[0];
+    private long[] frontier = new long[0];
+    private int[] dist  = new int[0];
+    private int[] queue = new int[0];
+    private int   epoch;
+    private int   tail;
+    private int   level;
+    private int   target;
+
+    // Visitor queueing the unvisited neighbors of a node at the current level
+    private final NeighborVisitor expand = this::enqueue;
+
+    // Visitor that stops at the first neighbor in the frontier bitset
+    private final NeighborVisitor notInFrontier =
+        (w, wgt) -> (frontier[w >>> 6] & (1L << w)) == 0;
+
+
+    // Prepare the arrays for a new search over n vertices
+    private void reset(int n) {
+        if (stamp.length < n) {
+            stamp = new int[n];
+            dist = new int[n];
+            queue = new int[n];
+            frontier = new long[(n + 63) >>> 6];
+            epoch = 0;
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+        tail = 0;
+        target = -1;
+    }
+
+
+    // Mark v as reached at distance d and add it to the queue
+    private void mark(int v, int d) {
+        stamp[v] = epoch;
+        dist[v] = d;
+        queue[tail++] = v;
+    }
+
+
+    // Queue w one level below the node being expanded; stop at the target
+    private boolean enqueue(int w, int wgt) {
+        if (stamp[w] != epoch) {
+            mark(w, level + 1);
+            return w != target;
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the number of edges on the shortest path from source to target,
+     * stopping as soon as the target is reached.
+     * 
+     * @param g      the graph to search
+     * @param source the start vertex
+     * @param target the vertex to look for
+     * @return the distance, or Integer.MAX_VALUE if there is no path
+     */
+    public int distance(Graph g, int source, int target) {
+        reset(g.nodeCount());
+        mark(source, 0);
+        if (source == target) {
+            return 0;
+        }
+        this.target = target;
+        for (int head = 0; head < tail; head++) {
+            int node = queue[head];
+            level = dist[node];
+            if (!g.forEachNeighbor(node, expand)) {
+                return dist[target];
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Visits every vertex within maxLevel edges of source. The vertices
+     * reached are then available through visitedCount() and visitedAt(),
+     * level by level in the order they were discovered.
+     * 
+     * @param g        the graph to search
+     * @param source   the start vertex
+     * @param maxLevel the largest distance to visit
+     * @return the number of vertices visited, including the source
+     */
+    public int search(Graph g, int source, int maxLevel) {
+        reset(g.nodeCount());
+        mark(source, 0);
+        for (int head = 0; head < tail; head++) {
+            int node = queue[head];
+            level = dist[node];
+            if (level >= maxLevel) {
+                break;
+            }
+            g.forEachNeighbor(node, expand);
+        }
+        return tail;
+    }
+
+
+    /**
+     * Same as search(), but takes bottom-up steps while the frontier is
+     * large. The same vertices are reached at the same distances; within a
+     * level reached bottom-up they are listed in increasing index order.
+     * 
+     * @param g        the graph to search, with symmetric edges
+     * @param source   the start vertex
+     * @param maxLevel the largest distance to visit
+     * @return the number of vertices visited, including the source
+     */
+    public int searchDirectionOptimizing(Graph g, int source, int maxLevel) {
+        int n = g.nodeCount();
+        reset(n);
+        mark(source, 0);
+
+        // Edges not yet explored from the visited side
+        long unexplored = (long) g.edgeCount() - g.degree(source);
+        boolean bottomUp = false;
+        int levelStart = 0;
+        for (level = 0; level < maxLevel && levelStart < tail; level++) {
+            int levelEnd = tail;
+            long frontierEdges = 0;
+            for (int i = levelStart; i < levelEnd; i++) {
+                frontierEdges += g.degree(queue[i]);
+            }
+
+            if (!bottomUp && frontierEdges > unexplored / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && levelEnd - levelStart < n / BETA) {
+                bottomUp = false;
+            }
+
+            if (bottomUp) {
+                for (int i = levelStart; i < levelEnd; i++) {
+                    frontier[queue[i] >>> 6] |= 1L << queue[i];
+                }
+                for (int v = 0; v < n; v++) {
+                    if (stamp[v] != epoch && !g.forEachNeighbor(v, notInFrontier)) {
+                        mark(v, level + 1);
+                    }
+                }
+                for (int i = levelStart; i < levelEnd; i++) {
+                    frontier[queue[i] >>> 6] = 0;
+                }
+            } else {
+                for (int i = levelStart; i < levelEnd; i++) {
+                    g.forEachNeighbor(queue[i], expand);
+                }
+            }
+
+            for (int i = levelEnd; i < tail; i++) {
+                unexplored -= g.degree(queue[i]);
+            }
+            levelStart = levelEnd;
+        }
+        return tail;
+    }
+
+
+    /**
+     * Returns the distance from source to every vertex of the graph, found
+     * by one full search
+     * 
+     * @param g      the graph to search
+     * @param source the start vertex
+     * @return an array indexed by vertex holding its distance from source,
+     *         or Integer.MAX_VALUE for vertices that cannot be reached
+     */
+    public int[] distances(Graph g, int source) {
+        return distances(g, source, false);
+    }
+
+
+    /**
+     * Returns the distance from source to every vertex of the graph
+     * 
+     * @param g                   the graph to search
+     * @param source              the start vertex
+     * @param directionOptimizing true to use searchDirectionOptimizing()
+     * @return an array indexed by vertex holding its distance from source,
+     *         or Integer.MAX_VALUE for vertices that cannot be reached
+     */
+    public int[] distances(Graph g, int source, boolean directionOptimizing) {
+        if (directionOptimizing) {
+            searchDirectionOptimizing(g, source, Integer.MAX_VALUE);
+        } else {
+            search(g, source, Integer.MAX_VALUE);
+        }
+        int[] result = new int[g.nodeCount()];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        for (int i = 0; i < tail; i++) {
+            result[queue[i]] = dist[queue[i]];
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the number of vertices reached by the last search
+     */
+    public int visitedCount() {
+        return tail;
+    }
+
+
+    /**
+     * @param i the position in visiting order, 0 <= i < visitedCount()
+     * @return the i-th vertex reached by the last search
+     */
+    public int visitedAt(int i) {
+        return queue[i];
+    }
+
+
+    /**
+     * @param v a vertex
+     * @return the distance of v found by the last search, or
+     *         Integer.MAX_VALUE if v was not reached
+     */
+    public int distanceTo(int v) {
+        return stamp[v] == epoch ? dist[v] : Integer.MAX_VALUE;
+    }
+}
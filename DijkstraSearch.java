@@ -0,0 +1,214 @@
+import java.util.Arrays;
+
+/**
+ * A reusable Dijkstra search over the vertex indices of a Graph, for
+ * shortest paths that take the strength of each friendship into account.
+ *
+ * The stored weight of an edge is its strength times 100, so 1 to 100.
+ * The length of an edge is the inverse of its strength, 100 / weight: a
+ * friendship of strength 1 counts as one hop, one of strength 0.25 as four
+ * hops, and a path of strong ties is shorter than a path of weak ones.
+ *
+ * The priority queue is an indexed binary heap of vertex indices ordered by
+ * their tentative distance, kept in primitive arrays; pos[v] is the slot of
+ * v in the heap, so a shorter distance found later moves v up in place
+ * instead of adding a second entry. As in BreadthFirstSearch, a vertex
+ * belongs to the current search iff its stamp equals the current epoch, so
+ * starting a new search does not clear anything, and vertices are recorded
+ * in the order they are settled, which is increasing distance.
+ *
+ * An instance is not thread safe; SocialNetwork keeps one per thread so
+ * repeated queries run without allocating.
+ */
+public class DijkstraSearch {
+
+    // pos[] value of a vertex whose distance is final
+    private static final int SETTLED = -1;
+
+    private int[]    stamp   = new int[0];
+    private double[] dist    = new double[0];
+    private int[]    pos     = new int[0];
+    private int[]    heap    = new int[0];
+    private int[]    settled = new int[0];
+    private int      epoch;
+    private int      size;
+    private int      count;
+    private double   base;
+
+    // Visitor relaxing the edges of the vertex being settled
+    private final NeighborVisitor relax = this::relax;
+
+
+    /**
+     * The length of an edge with the given stored weight
+     *
+     * @param wgt the stored weight, 1 to 100
+     * @return the length of the edge
+     */
+    static double length(int wgt) {
+        return 100.0 / wgt;
+    }
+
+
+    // Prepare the arrays for a new search over n vertices
+    private void reset(int n) {
+        if (stamp.length < n) {
+            stamp = new int[n];
+            dist = new double[n];
+            pos = new int[n];
+            heap = new int[n];
+            settled = new int[n];
+            epoch = 0;
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+        size = 0;
+        count = 0;
+    }
+
+
+    /**
+     * Returns the length of the shortest path from source to target,
+     * stopping as soon as the target's distance is final
+     *
+     * @param g      the graph to search
+     * @param source the start vertex
+     * @param target the vertex to look for
+     * @return the distance, or Double.POSITIVE_INFINITY if there is no path
+     */
+    public double distance(Graph g, int source, int target) {
+        reset(g.nodeCount());
+        push(source, 0);
+        while (size > 0) {
+            int node = pop();
+            if (node == target) {
+                return dist[node];
+            }
+            base = dist[node];
+            g.forEachNeighbor(node, relax);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * Settles every vertex whose distance from source is at most radius.
+     * The vertices are then available through settledAt(), in increasing
+     * order of distance, and their distances through distanceTo().
+     *
+     * @param g      the graph to search
+     * @param source the start vertex
+     * @param radius the largest distance to settle
+     * @return the number of vertices settled, including the source
+     */
+    public int within(Graph g, int source, double radius) {
+        reset(g.nodeCount());
+        push(source, 0);
+        while (size > 0 && dist[heap[0]] <= radius) {
+            int node = pop();
+            base = dist[node];
+            g.forEachNeighbor(node, relax);
+        }
+        return count;
+    }
+
+
+    /**
+     * @param i the position in settling order, below the count returned by
+     *          the last within()
+     * @return the i-th vertex settled by the last search
+     */
+    public int settledAt(int i) {
+        return settled[i];
+    }
+
+
+    /**
+     * @param v a vertex
+     * @return the distance of v found by the last search, or
+     *         Double.POSITIVE_INFINITY if it was not reached
+     */
+    public double distanceTo(int v) {
+        return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+
+    // Offer w the distance through the vertex being settled
+    private boolean relax(int w, int wgt) {
+        double d = base + length(wgt);
+        if (stamp[w] != epoch) {
+            push(w, d);
+        } else if (pos[w] != SETTLED && d < dist[w]) {
+            dist[w] = d;
+            siftUp(pos[w]);
+        }
+        return true;
+    }
+
+
+    // Add v to the heap at distance d
+    private void push(int v, double d) {
+        stamp[v] = epoch;
+        dist[v] = d;
+        heap[size] = v;
+        pos[v] = size;
+        siftUp(size++);
+    }
+
+
+    // Remove and settle the closest vertex in the heap
+    private int pop() {
+        int top = heap[0];
+        pos[top] = SETTLED;
+        settled[count++] = top;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        double d = dist[v];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (dist[p] <= d) {
+                break;
+            }
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        double d = dist[v];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && dist[heap[child + 1]] < dist[heap[child]]) {
+                child++;
+            }
+            int c = heap[child];
+            if (d <= dist[c]) {
+                break;
+            }
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+}
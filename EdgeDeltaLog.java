@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+/**
+ * An append-only record of the edge changes made to a GraphOverlay since
+ * its base graph was last compacted. Each record is an operation on one
+ * directed edge: ADD of a new edge, WEIGHT change of an existing edge, or
+ * REMOVE. Only changes that took effect are recorded, so replaying the
+ * records in order onto the base graph rebuilds the overlay.
+ *
+ * Compaction merges a prefix of the records into a new base graph and then
+ * drops that prefix; records are never changed once appended.
+ *
+ * The log is not thread safe; GraphOverlay guards it with its own lock.
+ */
+public class EdgeDeltaLog {
+
+    static final byte ADD    = 1;
+    static final byte WEIGHT = 2;
+    static final byte REMOVE = 3;
+
+    private byte[] ops;
+    private int[]  from;
+    private int[]  to;
+    private int[]  weights;
+    private int    size;
+
+
+    /**
+     * Create an empty log
+     */
+    EdgeDeltaLog() {
+        ops = new byte[16];
+        from = new int[16];
+        to = new int[16];
+        weights = new int[16];
+    }
+
+
+    /**
+     * Append a record
+     *
+     * @param op  ADD, WEIGHT or REMOVE
+     * @param v   the from node
+     * @param w   the to node
+     * @param wgt the new weight of the edge, or 0 for REMOVE
+     */
+    void append(byte op, int v, int w, int wgt) {
+        if (size == ops.length) {
+            int capacity = 2 * size;
+            ops = Arrays.copyOf(ops, capacity);
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        ops[size] = op;
+        from[size] = v;
+        to[size] = w;
+        weights[size] = wgt;
+        size++;
+    }
+
+
+    /**
+     * @return the number of records in the log
+     */
+    int size() {
+        return size;
+    }
+
+
+    // The fields of record i
+    byte op(int i) {
+        return ops[i];
+    }
+
+
+    int from(int i) {
+        return from[i];
+    }
+
+
+    int to(int i) {
+        return to[i];
+    }
+
+
+    int weight(int i) {
+        return weights[i];
+    }
+
+
+    /**
+     * Drop the first count records, once they are part of the base graph
+     *
+     * @param count the number of records to drop
+     */
+    void discard(int count) {
+        int rest = size - count;
+        System.arraycopy(ops, count, ops, 0, rest);
+        System.arraycopy(from, count, from, 0, rest);
+        System.arraycopy(to, count, to, 0, rest);
+        System.arraycopy(weights, count, weights, 0, rest);
+        size = rest;
+    }
+
+
+    /**
+     * Drop every record
+     */
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+/**
+ * A growable list of weighted, directed edges kept in parallel primitive
+ * arrays. It is the staging area used to bulk-build the read-optimized graph
+ * implementations without allocating an object per edge.
+ */
+public class EdgeList {
+
+    // Most edges one list can hold, the largest safe array length
+    static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private int[] from;
+    private int[] to;
+    private int[] weights;
+    private int   size;
+
+
+    /**
+     * Create an empty edge list with a small default capacity
+     */
+    EdgeList() {
+        this(16);
+    }
+
+
+    /**
+     * Create an empty edge list
+     * 
+     * @param capacity the number of edges to reserve room for, at most
+     *                 MAX_CAPACITY
+     */
+    EdgeList(int capacity) {
+        capacity = Math.max(Math.min(capacity, MAX_CAPACITY), 1);
+        from = new int[capacity];
+        to = new int[capacity];
+        weights = new int[capacity];
+    }
+
+
+    // Append the edge (v, w) with weight wgt
+    void add(int v, int w, int wgt) {
+        if (size == from.length) {
+            if (size == MAX_CAPACITY) {
+                throw new IllegalStateException("An edge list holds at most " + MAX_CAPACITY + " edges");
+            }
+            int capacity = (int) Math.min(from.length + (from.length >> 1) + 1L, MAX_CAPACITY);
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        from[size] = v;
+        to[size] = w;
+        weights[size] = wgt;
+        size++;
+    }
+
+
+    // Return the number of edges in the list
+    int size() {
+        return size;
+    }
+
+
+    // The backing arrays; only the first size() entries are meaningful
+    int[] from() {
+        return from;
+    }
+
+
+    int[] to() {
+        return to;
+    }
+
+
+    int[] weights() {
+        return weights;
+    }
+}
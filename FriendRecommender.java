@@ -0,0 +1,210 @@
+import java.util.Arrays;
+
+/**
+ * "People you may know": the friends of a user's friends who are not yet
+ * friends of the user, ranked by how many friends they share with the user.
+ *
+ * Scores are accumulated in a primitive array indexed by user, with the
+ * same epoch stamps as BreadthFirstSearch so nothing is cleared between
+ * queries, and the users touched are listed as they are first scored. The
+ * best k are then picked with a bounded min-heap of k entries, so ranking
+ * costs O(c log k) for c candidates instead of sorting them all.
+ *
+ * A weighted score adds, for every mutual friend m, the product of the
+ * strengths of the two friendships u-m and m-c (weight * weight, up to
+ * 10,000 per mutual friend), so a few close mutual friends can outrank
+ * many distant ones.
+ *
+ * An instance is not thread safe; SocialNetwork keeps one per thread.
+ */
+public class FriendRecommender {
+
+    // Score of the user and the user's friends, who are never candidates;
+    // low enough that adding every possible score keeps it negative
+    private static final long EXCLUDED = Long.MIN_VALUE / 2;
+
+    private int[]   stamp   = new int[0];
+    private long[]  score   = new long[0];
+    private int[]   touched = new int[0];
+    private int     epoch;
+    private int     count;
+    private int     friendWeight;
+    private boolean weighted;
+    private Graph   graph;
+
+    private int[]   heapUsers  = new int[0];
+    private long[]  heapScores = new long[0];
+    private int     size;
+
+    // Visitors marking a user as excluded, walking a friend's friends, and
+    // crediting one friend of a friend
+    private final NeighborVisitor exclude = this::exclude;
+    private final NeighborVisitor expand  = this::expand;
+    private final NeighborVisitor credit  = this::credit;
+
+
+    // Prepare the arrays for a new query over n users
+    private void reset(int n) {
+        if (stamp.length < n) {
+            stamp = new int[n];
+            score = new long[n];
+            touched = new int[n];
+            epoch = 0;
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+        count = 0;
+    }
+
+
+    /**
+     * Returns the k best friend-of-friend candidates of a user
+     *
+     * @param g        the graph, with symmetric edges
+     * @param userId   the user to recommend friends to
+     * @param k        the most candidates to return
+     * @param weighted true to score by the strength of the friendships
+     *                 through each mutual friend, false to count them
+     * @return the candidates, best first; ties go to the lower user index
+     */
+    public int[] top(Graph g, int userId, int k, boolean weighted) {
+        int[] best = new int[Math.max(0, Math.min(k, g.nodeCount()))];
+        int count = top(g, userId, k, weighted, best);
+        return count == best.length ? best : Arrays.copyOf(best, count);
+    }
+
+
+    /**
+     * Same as top(), but writes the candidates into a caller's buffer
+     *
+     * @param g        the graph, with symmetric edges
+     * @param userId   the user to recommend friends to
+     * @param k        the most candidates to return
+     * @param weighted true to score by the strength of the friendships
+     *                 through each mutual friend, false to count them
+     * @param out      receives the candidates, best first; must hold
+     *                 min(k, number of vertices) of them
+     * @return the number of candidates written
+     */
+    public int top(Graph g, int userId, int k, boolean weighted, int[] out) {
+        reset(g.nodeCount());
+        this.weighted = weighted;
+        this.graph = g;
+
+        // The user and the user's friends are not candidates
+        exclude(userId, 0);
+        g.forEachNeighbor(userId, exclude);
+
+        // Credit every friend of every friend
+        g.forEachNeighbor(userId, expand);
+        this.graph = null;
+
+        // Keep the k best candidates in a min-heap, which never needs more
+        // room than there are users scored
+        int keep = Math.max(0, Math.min(k, count));
+        if (heapUsers.length < keep) {
+            heapUsers = new int[keep];
+            heapScores = new long[keep];
+        }
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            int user = touched[i];
+            long s = score[user];
+            if (size < keep) {
+                heapUsers[size] = user;
+                heapScores[size] = s;
+                siftUp(size++);
+            } else if (keep > 0 && worse(heapUsers[0], heapScores[0], user, s)) {
+                heapUsers[0] = user;
+                heapScores[0] = s;
+                siftDown(0);
+            }
+        }
+
+        // Empty the heap from the worst end to list the best first
+        int found = size;
+        for (int i = size - 1; i >= 0; i--) {
+            out[i] = heapUsers[0];
+            heapUsers[0] = heapUsers[size - 1];
+            heapScores[0] = heapScores[size - 1];
+            size--;
+            siftDown(0);
+        }
+        return found;
+    }
+
+
+    private boolean exclude(int user, int wgt) {
+        stamp[user] = epoch;
+        score[user] = EXCLUDED;
+        return true;
+    }
+
+
+    private boolean expand(int friend, int wgt) {
+        friendWeight = wgt;
+        return graph.forEachNeighbor(friend, credit);
+    }
+
+
+    // Add the score of candidate c, reached through the current friend
+    private boolean credit(int c, int wgt) {
+        if (stamp[c] != epoch) {
+            stamp[c] = epoch;
+            score[c] = 0;
+            touched[count++] = c;
+        }
+        score[c] += weighted ? (long) friendWeight * wgt : 1;
+        return true;
+    }
+
+
+    // True iff (a, sa) ranks below (b, sb)
+    private static boolean worse(int a, long sa, int b, long sb) {
+        return sa < sb || (sa == sb && a > b);
+    }
+
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(heapUsers[i], heapScores[i], heapUsers[parent], heapScores[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && worse(heapUsers[child + 1], heapScores[child + 1],
+                    heapUsers[child], heapScores[child])) {
+                child++;
+            }
+            if (!worse(heapUsers[child], heapScores[child], heapUsers[i], heapScores[i])) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+
+    private void swap(int i, int j) {
+        int user = heapUsers[i];
+        heapUsers[i] = heapUsers[j];
+        heapUsers[j] = user;
+        long s = heapScores[i];
+        heapScores[i] = heapScores[j];
+        heapScores[j] = s;
+    }
+}
@@ -90,4 +90,24 @@ public interface Graph {
      */
     int[] neighbors(int v);
 
+
+    /**
+     * Returns the number of neighbors of v
+     * 
+     * @param v - the node
+     * @return the out-degree of v
+     */
+    int degree(int v);
+
+
+    /**
+     * Calls the visitor once per neighbor of v, in increasing order of
+     * neighbor index, until it returns false. Nothing is allocated.
+     * 
+     * @param v       - the node
+     * @param visitor - the callback receiving each neighbor and edge weight
+     * @return true if every neighbor was visited, false if the visitor stopped
+     */
+    boolean forEachNeighbor(int v, NeighborVisitor visitor);
+
 }
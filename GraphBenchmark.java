@@ -0,0 +1,713 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command line benchmarks for the graph structures and traversals.
+ * 
+ * Usage: java GraphBenchmark name [arguments]
+ * 
+ * where name is one of
+ *   direction [dataset]
+ *       per level cost of top-down vs bottom-up BFS steps, and timings of
+ *       STANDARD vs DIRECTION_OPTIMIZING full sweeps
+ *   parallel [vertices [degree]]
+ *       full sweeps of a random graph (default 2,000,000 vertices with an
+ *       average degree of 16) with the sequential search and with the
+ *       parallel search on 1, 2, 4, ... threads
+ *   lookup [dataset]
+ *       hasEdge() throughput of GraphL, GraphCSR with binary search,
+ *       GraphCSR with hashed high-degree rows and GraphOffHeap
+ *   mixed [threads [seconds]]
+ *       threads running a mix of 90% queries and 10% friendship updates
+ *       against CONCURRENT storage, then a consistency check of the graph
+ *   delta [threads [seconds]]
+ *       query latency on CSR storage, first alone and then while a stream
+ *       of friendship changes is ingested and compacted in the background
+ *   cache [requests]
+ *       recommendationByDistance() latency for a skewed stream of 2 and 3
+ *       hop requests (default 200,000), with and without the neighborhood
+ *       cache
+ *   landmarks [dataset]
+ *       build time, query time and measured error of the landmark oracle
+ *       with 4 to 64 landmarks chosen by degree and at random, against
+ *       exact distances for 100,000 random pairs
+ *   batch [kind]
+ *       users/s of a batch job over every user of the dataset, where kind
+ *       is friends (default, top 10 by mutual friends) or neighborhoods
+ *       (users within 2 hops), on 1, 2, 4, ... threads, against a loop
+ *       of single queries
+ *   likes [posts]
+ *       heap bytes per like of loadPosts() plus postByUser() against
+ *       LikeStore, for a random likes file (default 200,000 posts with
+ *       20 likes each on average)
+ *   load [edges]
+ *       writes a random edge file (default 20,000,000 edges) to a temporary
+ *       directory and times loading it sequentially and on 1, 2, 4, ...
+ *       threads
+ * 
+ * The dataset defaults to ./data/socfb-American75.mtx.
+ */
+public class GraphBenchmark {
+
+    private static final String DATASET = "./data/socfb-American75.mtx";
+
+
+    public static void main(String[] args) {
+        String name = args.length > 0 ? args[0] : "direction";
+        switch (name) {
+            case "direction":
+                directionOptimizing(arg(args, 1, DATASET));
+                break;
+            case "parallel":
+                parallel(Integer.parseInt(arg(args, 1, "2000000")),
+                        Integer.parseInt(arg(args, 2, "16")));
+                break;
+            case "lookup":
+                lookup(arg(args, 1, DATASET));
+                break;
+            case "mixed":
+                mixed(Integer.parseInt(arg(args, 1,
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                        Integer.parseInt(arg(args, 2, "5")));
+                break;
+            case "delta":
+                delta(Integer.parseInt(arg(args, 1,
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                        Integer.parseInt(arg(args, 2, "5")));
+                break;
+            case "cache":
+                cache(Integer.parseInt(arg(args, 1, "200000")));
+                break;
+            case "landmarks":
+                landmarks(arg(args, 1, DATASET));
+                break;
+            case "batch":
+                batch(arg(args, 1, "friends"));
+                break;
+            case "likes":
+                likes(Integer.parseInt(arg(args, 1, "200000")));
+                break;
+            case "load":
+                load(Integer.parseInt(arg(args, 1, "20000000")));
+                break;
+            default:
+                System.err.println("Unknown benchmark: " + name);
+                System.exit(1);
+        }
+    }
+
+
+    // The i-th command line argument, or a default
+    private static String arg(String[] args, int i, String fallback) {
+        return args.length > i ? args[i] : fallback;
+    }
+
+
+    // A random graph with n vertices and n * degree / 2 undirected edges
+    private static Graph randomGraph(int n, int degree, long seed) {
+        Random random = new Random(seed);
+        long undirected = (long) n * degree / 2;
+        EdgeList edges = new EdgeList((int) (2 * undirected));
+        for (long i = 0; i < undirected; i++) {
+            int v = random.nextInt(n);
+            int w = random.nextInt(n);
+            int wgt = 1 + random.nextInt(100);
+            edges.add(v, w, wgt);
+            edges.add(w, v, wgt);
+        }
+        return new GraphCSR(n, edges);
+    }
+
+
+    // Load the dataset into a CSR graph
+    private static Graph load(String path) {
+        SocialNetwork network = new SocialNetwork();
+        network.setStorage(SocialNetwork.Storage.CSR);
+        if (network.loadGraphFromDataSet(path) < 0) {
+            throw new IllegalArgumentException("Cannot read " + path);
+        }
+        return network.graph();
+    }
+
+
+    // Highest degree vertex, a typical source for a whole-graph sweep
+    private static int maxDegreeVertex(Graph g) {
+        int best = 0;
+        for (int v = 1; v < g.nodeCount(); v++) {
+            if (g.degree(v) > g.degree(best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * For one source, prints the number of edges a top-down and a bottom-up
+     * step would inspect at every level, which shows where the crossover
+     * lies, then times full sweeps from many sources with each algorithm.
+     */
+    static void directionOptimizing(String path) {
+        Graph g = load(path);
+        int n = g.nodeCount();
+        int source = maxDegreeVertex(g);
+        int[] dist = new BreadthFirstSearch().distances(g, source);
+
+        System.out.printf("%d vertices, %d edges, source %d%n",
+                n, g.edgeCount(), source);
+        System.out.printf("%5s %9s %12s %12s  %s%n",
+                "level", "frontier", "top-down", "bottom-up", "cheaper");
+        for (int level = 0;; level++) {
+            final int d = level;
+            int frontier = 0;
+            long topDown = 0;
+            long bottomUp = 0;
+            for (int v = 0; v < n; v++) {
+                if (dist[v] == d) {
+                    frontier++;
+                    topDown += g.degree(v);
+                } else if (dist[v] > d) {
+                    // Edges an unvisited vertex scans before it finds a parent
+                    long[] scanned = new long[1];
+                    g.forEachNeighbor(v, (w, wgt) -> {
+                        scanned[0]++;
+                        return dist[w] != d;
+                    });
+                    bottomUp += scanned[0];
+                }
+            }
+            if (frontier == 0) {
+                break;
+            }
+            System.out.printf("%5d %9d %12d %12d  %s%n", level, frontier,
+                    topDown, bottomUp, topDown <= bottomUp ? "top-down" : "bottom-up");
+        }
+
+        Random random = new Random(42);
+        int[] sources = new int[500];
+        for (int i = 0; i < sources.length; i++) {
+            do {
+                sources[i] = random.nextInt(n);
+            } while (g.degree(sources[i]) == 0);
+        }
+        BreadthFirstSearch search = new BreadthFirstSearch();
+        for (int round = 0; round < 3; round++) {
+            long standard = time(() -> {
+                for (int s : sources) {
+                    search.search(g, s, Integer.MAX_VALUE);
+                }
+            });
+            long optimized = time(() -> {
+                for (int s : sources) {
+                    search.searchDirectionOptimizing(g, s, Integer.MAX_VALUE);
+                }
+            });
+            System.out.printf("round %d: %d sweeps, standard %.1f ms, "
+                    + "direction-optimizing %.1f ms%n", round, sources.length,
+                    standard / 1e6, optimized / 1e6);
+        }
+    }
+
+
+    /**
+     * Times full sweeps of a random graph with the sequential search and
+     * with the parallel search on a growing number of threads.
+     */
+    static void parallel(int n, int degree) {
+        long start = System.nanoTime();
+        Graph g = randomGraph(n, degree, 42);
+        System.out.printf("%d vertices, %d edges, built in %.0f ms%n",
+                n, g.edgeCount(), (System.nanoTime() - start) / 1e6);
+
+        int[] sources = {0, n / 3, 2 * n / 3};
+        BreadthFirstSearch sequential = new BreadthFirstSearch();
+        long base = best(() -> {
+            for (int s : sources) {
+                sequential.search(g, s, Integer.MAX_VALUE);
+            }
+        });
+        System.out.printf("%-12s %9.1f ms%n", "sequential", base / 1e6);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores;
+                threads = threads < cores ? Math.min(2 * threads, cores) : cores + 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelBreadthFirstSearch search = new ParallelBreadthFirstSearch(
+                    pool, ParallelBreadthFirstSearch.DEFAULT_THRESHOLD);
+            long elapsed = best(() -> {
+                for (int s : sources) {
+                    search.distances(g, s);
+                }
+            });
+            pool.shutdown();
+            System.out.printf("%2d threads   %9.1f ms  speedup %.2fx%n",
+                    threads, elapsed / 1e6, (double) base / elapsed);
+        }
+    }
+
+
+    /**
+     * Times hasEdge() on each graph implementation. Half the queries are
+     * edges of the graph and half are random pairs; the sources are drawn
+     * in proportion to degree, as friend-of-friend checks would be.
+     */
+    static void lookup(String path) {
+        Graph csr = load(path);
+        int n = csr.nodeCount();
+        int m = csr.edgeCount();
+        Random random = new Random(42);
+        int queries = 4000000;
+        int[] from = new int[queries];
+        int[] to = new int[queries];
+        int[] edgeSource = new int[m];
+        for (int v = 0, e = 0; v < n; v++) {
+            for (int i = 0; i < csr.degree(v); i++) {
+                edgeSource[e++] = v;
+            }
+        }
+        for (int q = 0; q < queries; q++) {
+            int e = random.nextInt(m);
+            from[q] = edgeSource[e];
+            to[q] = q % 2 == 0
+                    ? ((GraphCSR) csr).neighbor(from[q], random.nextInt(csr.degree(from[q])))
+                    : random.nextInt(n);
+        }
+
+        GraphL linked = new GraphL();
+        linked.copyEdges(csr);
+        GraphCSR hashed = new GraphCSR(((GraphCSR) csr).offsets(),
+                ((GraphCSR) csr).targets(), ((GraphCSR) csr).weights());
+        hashed.indexHighDegree(32);
+        Graph offHeap = GraphOffHeap.copyOf(csr);
+
+        String[] names = {"GraphL", "GraphCSR binary", "GraphCSR hash>=32", "GraphOffHeap"};
+        Graph[] graphs = {linked, csr, hashed, offHeap};
+        for (int i = 0; i < graphs.length; i++) {
+            Graph g = graphs[i];
+            int[] found = new int[1];
+            long elapsed = best(() -> {
+                int hits = 0;
+                for (int q = 0; q < queries; q++) {
+                    if (g.hasEdge(from[q], to[q])) {
+                        hits++;
+                    }
+                }
+                found[0] = hits;
+            });
+            System.out.printf("%-18s %7.1f ns/lookup  (%d found)%n",
+                    names[i], (double) elapsed / queries, found[0]);
+        }
+    }
+
+
+    /**
+     * Runs queries and updates from several threads at once against the
+     * concurrent graph, then checks that every edge still has its reverse
+     * and that the edge count matches the degrees.
+     */
+    static void mixed(int threads, int seconds) {
+        SocialNetwork network = new SocialNetwork();
+        network.setStorage(SocialNetwork.Storage.CONCURRENT);
+        network.loadGraphFromDataSet(DATASET);
+        Graph g = network.graph();
+        int n = g.nodeCount();
+
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                while (System.nanoTime() < deadline) {
+                    int user = 1 + random.nextInt(n - 1);
+                    int other = 1 + random.nextInt(n - 1);
+                    int choice = random.nextInt(10);
+                    if (choice == 0) {
+                        if (random.nextBoolean()) {
+                            network.addFriendship(user, other, random.nextDouble());
+                        } else {
+                            network.removeFriendship(user, other);
+                        }
+                        writes.increment();
+                    } else {
+                        if (choice < 5) {
+                            network.getShortestPathUnweighted(user, other);
+                        } else {
+                            network.recommendationByDistance(3, user);
+                        }
+                        reads.increment();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        System.out.printf("%d threads: %.0f queries/s, %.0f updates/s%n", threads,
+                reads.sum() / (double) seconds, writes.sum() / (double) seconds);
+
+        long degrees = 0;
+        int asymmetric = 0;
+        for (int v = 0; v < n; v++) {
+            degrees += g.degree(v);
+            for (int w : g.neighbors(v)) {
+                if (g.weight(v, w) != g.weight(w, v)) {
+                    asymmetric++;
+                }
+            }
+        }
+        System.out.printf("edge count %d, sum of degrees %d, asymmetric edges %d%n",
+                g.edgeCount(), degrees, asymmetric);
+    }
+
+
+    /**
+     * Measures query latency on CSR storage with and without a stream of
+     * friendship changes applied through the overlay and compacted every
+     * 20,000 changes
+     */
+    static void delta(int threads, int seconds) {
+        SocialNetwork network = new SocialNetwork();
+        network.setStorage(SocialNetwork.Storage.CSR);
+        network.loadGraphFromDataSet(DATASET);
+        int n = network.graph().nodeCount();
+        ExecutorService compactor = Executors.newSingleThreadExecutor();
+        network.setCompaction(20000, compactor);
+
+        for (boolean ingest : new boolean[] {false, true}) {
+            long deadline = System.nanoTime() + seconds * 1000000000L;
+            long[][] latencies = new long[threads][];
+            int[] counts = new int[threads];
+            Thread[] readers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                latencies[t] = new long[1 << 20];
+                readers[t] = new Thread(() -> {
+                    Random random = new Random(id);
+                    while (System.nanoTime() < deadline && counts[id] < latencies[id].length) {
+                        long start = System.nanoTime();
+                        network.recommendationByDistance(3, 1 + random.nextInt(n - 1));
+                        latencies[id][counts[id]++] = System.nanoTime() - start;
+                    }
+                });
+                readers[t].start();
+            }
+
+            // Batches of 10 changes, at most one batch per millisecond
+            long changes = 0;
+            Random random = new Random(-1);
+            while (ingest && System.nanoTime() < deadline) {
+                for (int i = 0; i < 10; i++, changes++) {
+                    int user = 1 + random.nextInt(n - 1);
+                    int other = 1 + random.nextInt(n - 1);
+                    if (random.nextInt(4) == 0) {
+                        network.removeFriendship(user, other);
+                    } else {
+                        network.addFriendship(user, other, random.nextDouble());
+                    }
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            for (Thread reader : readers) {
+                try {
+                    reader.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            long[] all = new long[total];
+            for (int t = 0, pos = 0; t < threads; pos += counts[t], t++) {
+                System.arraycopy(latencies[t], 0, all, pos, counts[t]);
+            }
+            Arrays.sort(all);
+            System.out.printf("%-14s %8.0f queries/s  p50 %7.1f us  p99 %7.1f us"
+                    + "  %7.0f changes/s, %d pending%n",
+                    ingest ? "with changes" : "queries only", total / (double) seconds,
+                    all[total / 2] / 1e3, all[(int) (total * 0.99)] / 1e3,
+                    changes / (double) seconds, network.pendingEdgeDeltas());
+        }
+        compactor.shutdown();
+    }
+
+
+    /**
+     * Replays the same skewed request stream, where 90% of the requests come
+     * from 100 hot users, with the neighborhood cache off and on
+     */
+    static void cache(int requests) {
+        SocialNetwork network = new SocialNetwork();
+        network.setStorage(SocialNetwork.Storage.CSR);
+        network.loadGraphFromDataSet(DATASET);
+        int n = network.graph().nodeCount();
+
+        for (long capacity : new long[] {0, 10000000}) {
+            network.setNeighborhoodCache(capacity);
+            Random random = new Random(7);
+            long[] latencies = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                int user = random.nextInt(10) < 9
+                        ? 1 + random.nextInt(100)
+                        : 1 + random.nextInt(n - 1);
+                int dist = 3 + random.nextInt(2);
+                long start = System.nanoTime();
+                network.recommendationByDistance(dist, user);
+                latencies[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("cache %-4s p50 %8.1f us  p99 %8.1f us  mean %8.1f us",
+                    capacity > 0 ? "on" : "off", latencies[requests / 2] / 1e3,
+                    latencies[(int) (requests * 0.99)] / 1e3,
+                    Arrays.stream(latencies).average().orElse(0) / 1e3);
+            NeighborhoodCache cache = network.neighborhoodCache();
+            if (cache != null) {
+                System.out.printf("  %d hits, %d misses, %d evictions",
+                        cache.hits(), cache.misses(), cache.evictions());
+            }
+            System.out.println();
+        }
+    }
+
+
+    /**
+     * Compares landmark bounds with exact distances for random pairs: the
+     * share of pairs whose upper bound is exact, the mean relative error of
+     * the upper bound, and how often both bounds meet
+     */
+    static void landmarks(String path) {
+        Graph g = load(path);
+        int n = g.nodeCount();
+        Random random = new Random(11);
+        int sources = 100;
+        int targets = 1000;
+        int[] from = new int[sources];
+        int[][] exact = new int[sources][];
+        BreadthFirstSearch search = new BreadthFirstSearch();
+        long exactTime = 0;
+        for (int s = 0; s < sources; s++) {
+            do {
+                from[s] = 1 + random.nextInt(n - 1);
+            } while (g.degree(from[s]) == 0);
+            int source = from[s];
+            exact[s] = search.distances(g, source);
+            exactTime += best(() -> search.distance(g, source, 1 + random.nextInt(n - 1)));
+        }
+        int[] to = new int[targets];
+        for (int t = 0; t < targets; t++) {
+            to[t] = 1 + random.nextInt(n - 1);
+        }
+        System.out.printf("exact BFS per pair %.1f us%n", exactTime / 1e3 / sources);
+        System.out.printf("%9s %-7s %9s %9s %8s %9s %8s%n", "landmarks", "choice",
+                "build ms", "query ns", "exact", "rel.err", "tight");
+
+        for (boolean byDegree : new boolean[] {true, false}) {
+            for (int k = 4; k <= 64; k *= 2) {
+                int count = k;
+                LandmarkOracle[] oracle = new LandmarkOracle[1];
+                long build = time(() -> oracle[0] = LandmarkOracle.build(g, count, byDegree, 42,
+                        ForkJoinPool.commonPool()));
+                int pairs = 0;
+                int hits = 0;
+                int tight = 0;
+                double error = 0;
+                long start = System.nanoTime();
+                for (int s = 0; s < sources; s++) {
+                    for (int t = 0; t < targets; t++) {
+                        int d = exact[s][to[t]];
+                        if (d == Integer.MAX_VALUE || d == 0) {
+                            continue;
+                        }
+                        int upper = oracle[0].upperBound(from[s], to[t]);
+                        int lower = oracle[0].lowerBound(from[s], to[t]);
+                        if (upper == LandmarkOracle.UNKNOWN) {
+                            continue;
+                        }
+                        pairs++;
+                        hits += upper == d ? 1 : 0;
+                        tight += upper == lower ? 1 : 0;
+                        error += (upper - d) / (double) d;
+                    }
+                }
+                long query = (System.nanoTime() - start) / (2L * sources * targets);
+                System.out.printf("%9d %-7s %9.1f %9d %7.1f%% %8.1f%% %7.1f%%%n", k,
+                        byDegree ? "degree" : "random", build / 1e6, query,
+                        100.0 * hits / pairs, 100 * error / pairs, 100.0 * tight / pairs);
+            }
+        }
+    }
+
+
+    /**
+     * Times a batch job over all users against a loop of single queries
+     */
+    static void batch(String kind) {
+        SocialNetwork network = new SocialNetwork();
+        network.setStorage(SocialNetwork.Storage.CSR);
+        network.loadGraphFromDataSet(DATASET);
+        int n = network.graph().nodeCount();
+        boolean friends = kind.equals("friends");
+
+        LongAdder results = new LongAdder();
+        long loop = best(() -> {
+            for (int user = 1; user < n; user++) {
+                results.add(friends ? network.recommendFriends(user, 10).size()
+                        : network.recommendationByDistance(3, user).size());
+            }
+        });
+        System.out.printf("%-12s %9.0f users/s%n", "query loop", n / (loop / 1e9));
+
+        RecommendationBatch.Sink sink = (userId, users, count) -> results.add(count);
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; threads <= cores;
+                threads = threads < cores ? Math.min(2 * threads, cores) : cores + 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            RecommendationBatch batch = network.recommendationBatch(pool);
+            double usersPerSecond = 0;
+            for (int round = 0; round < 5; round++) {
+                RecommendationBatch.Report report = friends
+                        ? batch.friends(10, false, 0, n, sink)
+                        : batch.neighborhoods(3, 0, n, sink);
+                usersPerSecond = Math.max(usersPerSecond, report.usersPerSecond());
+            }
+            pool.shutdown();
+            single = threads == 1 ? usersPerSecond : single;
+            System.out.printf("%2d threads   %9.0f users/s  speedup %.2fx%n",
+                    threads, usersPerSecond, usersPerSecond / single);
+        }
+    }
+
+
+    /**
+     * Measures the heap taken by the likes of a random file when held as
+     * LikedPost maps and as a LikeStore
+     */
+    static void likes(int postCount) {
+        Path file;
+        try {
+            file = Files.createTempFile("posts", ".txt");
+            Random random = new Random(9);
+            try (BufferedWriter out = Files.newBufferedWriter(file)) {
+                for (int post = 0; post < postCount; post++) {
+                    out.write(post + "=[");
+                    for (int i = 0, likes = random.nextInt(40); i < likes; i++) {
+                        out.write((i > 0 ? ", " : "") + (1 + random.nextInt(6385)) + " & "
+                                + Instant.ofEpochSecond(1640995200L + random.nextInt(40000000)));
+                    }
+                    out.write("]\n");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        SocialNetwork network = new SocialNetwork();
+        long before = usedHeap();
+        Map<Integer, List<LikedPost>> byUser = network.postByUser(network.loadPosts(file.toString()));
+        long maps = usedHeap() - before;
+        LikeStore store = network.loadLikes(file.toString());
+        long columns = usedHeap() - before - maps;
+        System.out.printf("%d likes of %d users: maps %.1f bytes/like, store %.1f bytes/like%n",
+                store.likeCount(), byUser.size(), maps / (double) store.likeCount(),
+                columns / (double) store.likeCount());
+        file.toFile().delete();
+    }
+
+
+    // Heap in use after a full collection
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    /**
+     * Times loading a random edge file sequentially and in parallel
+     */
+    static void load(int edges) {
+        int n = Math.max(edges / 16, 2);
+        Path file;
+        try {
+            file = Files.createTempFile("graph", ".mtx");
+            Random random = new Random(42);
+            try (BufferedWriter out = Files.newBufferedWriter(file)) {
+                out.write(n + " " + edges + "\n");
+                for (int i = 0; i < edges; i++) {
+                    out.write((1 + random.nextInt(n)) + " " + (1 + random.nextInt(n))
+                            + " 0." + random.nextInt(10) + random.nextInt(10) + "\n");
+                }
+            }
+            System.out.printf("%d vertices, %d edges, %d MB%n",
+                    n, edges, Files.size(file) >> 20);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        SocialNetwork network = new SocialNetwork();
+        network.setStorage(SocialNetwork.Storage.CSR);
+        String path = file.toString();
+        long base = best(() -> network.loadGraphFromDataSet(path));
+        System.out.printf("%-12s %9.1f ms%n", "sequential", base / 1e6);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores;
+                threads = threads < cores ? Math.min(2 * threads, cores) : cores + 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            network.setParallelLoading(pool);
+            long elapsed = best(() -> network.loadGraphFromDataSet(path));
+            pool.shutdown();
+            System.out.printf("%2d threads   %9.1f ms  speedup %.2fx%n",
+                    threads, elapsed / 1e6, (double) base / elapsed);
+        }
+        file.toFile().delete();
+    }
+
+
+    // Best wall clock time of a few runs, in nanoseconds
+    private static long best(Runnable task) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            best = Math.min(best, time(task));
+        }
+        return best;
+    }
+
+
+    // Wall clock time of one run, in nanoseconds
+    private static long time(Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        return System.nanoTime() - start;
+    }
+}
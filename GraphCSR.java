@@ -0,0 +1,485 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable graph stored in compressed sparse row (CSR) form. The
+ * neighbors of vertex v are targets[offsets[v]] .. targets[offsets[v + 1] - 1],
+ * sorted by vertex index, with the matching edge weights at the same positions
+ * of the weights array. Scanning a neighbor list is a sequential walk over a
+ * primitive array, and the whole graph costs two ints per edge plus one int
+ * per vertex.
+ * 
+ * Edge lookups binary search the sorted row. indexHighDegree() can add an
+ * open-addressing hash table to every row above a degree threshold, which
+ * makes lookups on popular vertices O(1) at the cost of two to four ints
+ * per indexed edge.
+ */
+public class GraphCSR implements Graph {
+
+    private int[]    offsets;
+    private int[]    targets;
+    private int[]    weights;
+    private Object[] nodeValues;
+
+    // Hash slots of vertex v are slots[slotStart[v]] .. slots[slotStart[v + 1] - 1],
+    // a power of two in number, or none for vertices that are not indexed.
+    // A slot holds an edge position plus one, or 0 when empty.
+    private int[]    slotStart;
+    private int[]    slots;
+
+
+    /**
+     * Empty no argument constructor; call init() before use
+     */
+    GraphCSR() {
+        // Nothing to allocate until the size is known
+    }
+
+
+    /**
+     * Build a graph with n vertices from an edge list in a single pass.
+     * Edges with a weight of 0 are dropped and when the same (v,w) edge
+     * appears more than once the last weight wins, matching what repeated
+     * calls to GraphL.addEdge() would store.
+     * 
+     * @param n     the number of vertices
+     * @param edges the directed edges of the graph
+     */
+    GraphCSR(int n, EdgeList edges) {
+        this(n, new EdgeList[] {edges}, null);
+    }
+
+
+    /**
+     * Build a graph with n vertices from edge lists holding consecutive
+     * parts of the edge sequence; the result is the same as building from
+     * their concatenation. The edges are ordered by two stable counting
+     * sorts, by target and then by source, which leaves every row sorted.
+     * Each pass splits its input into groups counted and scattered by
+     * separate tasks, and the per-group counters are turned into disjoint
+     * output ranges, so no two tasks write the same slot.
+     * 
+     * @param n     the number of vertices
+     * @param parts the directed edges of the graph, in order
+     * @param pool  the pool running the passes, or null to build on the
+     *              calling thread
+     */
+    GraphCSR(int n, EdgeList[] parts, ForkJoinPool pool) {
+        long m = 0;
+        for (EdgeList part : parts) {
+            m += part.size();
+        }
+        // Each group keeps one counter per vertex, so keep their total
+        // below the number of edges
+        int groups = pool == null ? 1 : pool.getParallelism();
+        groups = (int) Math.max(1, Math.min(groups, m / Math.max(n, 1)));
+
+        // First pass: order the edges by target vertex, one group of parts
+        // per task
+        int passOneGroups = Math.min(groups, parts.length);
+        int[] firstPart = splitParts(parts, passOneGroups);
+        int[][] count = new int[passOneGroups][];
+        parallelFor(pool, passOneGroups, g -> {
+            int[] c = new int[n];
+            for (int p = firstPart[g]; p < firstPart[g + 1]; p++) {
+                int[] to = parts[p].to();
+                int[] wgt = parts[p].weights();
+                for (int i = 0, size = parts[p].size(); i < size; i++) {
+                    if (wgt[i] != 0) {
+                        c[to[i]]++;
+                    }
+                }
+            }
+            count[g] = c;
+        });
+        int kept = exclusivePrefix(count, n, pool);
+        int[] byTargetFrom = new int[kept];
+        int[] byTargetTo = new int[kept];
+        int[] byTargetWgt = new int[kept];
+        parallelFor(pool, passOneGroups, g -> {
+            int[] c = count[g];
+            for (int p = firstPart[g]; p < firstPart[g + 1]; p++) {
+                int[] from = parts[p].from();
+                int[] to = parts[p].to();
+                int[] wgt = parts[p].weights();
+                for (int i = 0, size = parts[p].size(); i < size; i++) {
+                    if (wgt[i] != 0) {
+                        int pos = c[to[i]]++;
+                        byTargetFrom[pos] = from[i];
+                        byTargetTo[pos] = to[i];
+                        byTargetWgt[pos] = wgt[i];
+                    }
+                }
+            }
+        });
+
+        // Second pass: order by source vertex, one slice of the first
+        // pass's output per task
+        int[][] rowCount = new int[groups][];
+        int slices = groups;
+        parallelFor(pool, slices, g -> {
+            int[] c = new int[n];
+            for (int i = sliceStart(kept, g, slices); i < sliceStart(kept, g + 1, slices); i++) {
+                c[byTargetFrom[i]]++;
+            }
+            rowCount[g] = c;
+        });
+        exclusivePrefix(rowCount, n, pool);
+        offsets = new int[n + 1];
+        System.arraycopy(rowCount[0], 0, offsets, 0, n);
+        offsets[n] = kept;
+        targets = new int[kept];
+        weights = new int[kept];
+        parallelFor(pool, slices, g -> {
+            int[] c = rowCount[g];
+            for (int i = sliceStart(kept, g, slices); i < sliceStart(kept, g + 1, slices); i++) {
+                int pos = c[byTargetFrom[i]]++;
+                targets[pos] = byTargetTo[i];
+                weights[pos] = byTargetWgt[i];
+            }
+        });
+
+        removeDuplicates(pool, groups);
+        nodeValues = new Object[n];
+    }
+
+
+    /**
+     * Wrap adjacency arrays that are already in CSR form; they are not copied
+     * 
+     * @param offsets the row start of every vertex, followed by the edge count
+     * @param targets the neighbors of every vertex, rows sorted
+     * @param weights the weight of every edge
+     */
+    GraphCSR(int[] offsets, int[] targets, int[] weights) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        nodeValues = new Object[offsets.length - 1];
+    }
+
+
+    /**
+     * Copy the edges of any graph into a new GraphCSR
+     * 
+     * @param g the graph to copy
+     * @return g itself if it already is a GraphCSR, otherwise a copy of it
+     */
+    static GraphCSR copyOf(Graph g) {
+        if (g instanceof GraphCSR) {
+            return (GraphCSR) g;
+        }
+        int n = g.nodeCount();
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + g.degree(v);
+        }
+        int[] targets = new int[offsets[n]];
+        int[] weights = new int[offsets[n]];
+        int[] pos = {0};
+        for (int v = 0; v < n; v++) {
+            g.forEachNeighbor(v, (w, wgt) -> {
+                targets[pos[0]] = w;
+                weights[pos[0]] = wgt;
+                pos[0]++;
+                return true;
+            });
+        }
+        return new GraphCSR(offsets, targets, weights);
+    }
+
+
+    // Collapse repeated (v,w) edges, which are adjacent in their row, into
+    // one edge carrying the weight that came last
+    private void removeDuplicates(ForkJoinPool pool, int blocks) {
+        int n = offsets.length - 1;
+        int[] distinct = new int[n + 1];
+        parallelFor(pool, blocks, b -> {
+            for (int v = sliceStart(n, b, blocks); v < sliceStart(n, b + 1, blocks); v++) {
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    if (i == offsets[v] || targets[i] != targets[i - 1]) {
+                        distinct[v]++;
+                    }
+                }
+            }
+        });
+        int total = 0;
+        for (int v = 0; v < n; v++) {
+            int d = distinct[v];
+            distinct[v] = total;
+            total += d;
+        }
+        distinct[n] = total;
+        if (total == targets.length) {
+            return;
+        }
+
+        int[] newTargets = new int[total];
+        int[] newWeights = new int[total];
+        parallelFor(pool, blocks, b -> {
+            for (int v = sliceStart(n, b, blocks); v < sliceStart(n, b + 1, blocks); v++) {
+                int pos = distinct[v];
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    if (i > offsets[v] && targets[i] == targets[i - 1]) {
+                        newWeights[pos - 1] = weights[i];
+                    } else {
+                        newTargets[pos] = targets[i];
+                        newWeights[pos] = weights[i];
+                        pos++;
+                    }
+                }
+            }
+        });
+        offsets = distinct;
+        targets = newTargets;
+        weights = newWeights;
+    }
+
+
+    // Split the parts into groups of similar size; group g holds parts
+    // result[g] .. result[g + 1] - 1
+    private static int[] splitParts(EdgeList[] parts, int groups) {
+        long total = 0;
+        for (EdgeList part : parts) {
+            total += part.size();
+        }
+        int[] first = new int[groups + 1];
+        long seen = 0;
+        int g = 1;
+        for (int p = 0; p < parts.length && g < groups; p++) {
+            seen += parts[p].size();
+            // Leave at least one part for each remaining group
+            while (g < groups && (seen * groups >= total * g
+                    || parts.length - (p + 1) <= groups - g)) {
+                first[g++] = p + 1;
+            }
+        }
+        first[groups] = parts.length;
+        return first;
+    }
+
+
+    // The first index of slice s when [0, total) is cut into equal slices
+    private static int sliceStart(int total, int s, int slices) {
+        return (int) ((long) total * s / slices);
+    }
+
+
+    // Replace the per-group counts of every key by the position where that
+    // group's first item with the key goes, keys in order and groups in
+    // order within a key; return the total count
+    private static int exclusivePrefix(int[][] count, int n, ForkJoinPool pool) {
+        int blocks = pool == null ? 1 : pool.getParallelism();
+        long[] base = new long[blocks + 1];
+        parallelFor(pool, blocks, b -> {
+            long sum = 0;
+            for (int key = sliceStart(n, b, blocks); key < sliceStart(n, b + 1, blocks); key++) {
+                for (int[] c : count) {
+                    sum += c[key];
+                }
+            }
+            base[b + 1] = sum;
+        });
+        for (int b = 0; b < blocks; b++) {
+            base[b + 1] += base[b];
+        }
+        parallelFor(pool, blocks, b -> {
+            int pos = (int) base[b];
+            for (int key = sliceStart(n, b, blocks); key < sliceStart(n, b + 1, blocks); key++) {
+                for (int[] c : count) {
+                    int items = c[key];
+                    c[key] = pos;
+                    pos += items;
+                }
+            }
+        });
+        return (int) base[blocks];
+    }
+
+
+    // Run body(0) .. body(count - 1), in parallel on the pool if there is one
+    static void parallelFor(ForkJoinPool pool, int count, IntConsumer body) {
+        if (pool == null || count == 1) {
+            for (int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+        } else {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(body)).join();
+        }
+    }
+
+
+    // Initialize the graph with n vertices and no edges
+    public void init(int n) {
+        offsets = new int[n + 1];
+        targets = new int[0];
+        weights = new int[0];
+        nodeValues = new Object[n];
+    }
+
+
+    // Return the number of vertices
+    public int nodeCount() {
+        return offsets.length - 1;
+    }
+
+
+    // Return the current number of edges
+    public int edgeCount() {
+        return targets.length;
+    }
+
+
+    // Get the value of node with index v
+    public Object getValue(int v) {
+        return nodeValues[v];
+    }
+
+
+    // Set the value of node with index v
+    public void setValue(int v, Object val) {
+        nodeValues[v] = val;
+    }
+
+
+    // The edge set is fixed once built
+    public void addEdge(int v, int w, int wgt) {
+        throw new UnsupportedOperationException("GraphCSR is immutable");
+    }
+
+
+    // Get the weight value for an edge
+    public int weight(int v, int w) {
+        int i = find(v, w);
+        return i < 0 ? 0 : weights[i];
+    }
+
+
+    // Return the position of the (v,w) edge, or -1 if there is none
+    private int find(int v, int w) {
+        if (slotStart != null) {
+            int start = slotStart[v];
+            int mask = slotStart[v + 1] - start - 1;
+            if (mask >= 0) {
+                for (int h = hash(w) & mask;; h = (h + 1) & mask) {
+                    int e = slots[start + h] - 1;
+                    if (e < 0 || targets[e] == w) {
+                        return e;
+                    }
+                }
+            }
+        }
+        int i = Arrays.binarySearch(targets, offsets[v], offsets[v + 1], w);
+        return i < 0 ? -1 : i;
+    }
+
+
+    // Spread vertex indices over the hash slots
+    private static int hash(int w) {
+        int h = w * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * Build a hash table for every vertex with at least minDegree neighbors,
+     * replacing any earlier index
+     * 
+     * @param minDegree the smallest degree to index; a value below 1 removes
+     *                  the index
+     */
+    void indexHighDegree(int minDegree) {
+        if (minDegree < 1) {
+            slotStart = null;
+            slots = null;
+            return;
+        }
+        int n = nodeCount();
+        int[] start = new int[n + 1];
+        long total = 0;
+        for (int v = 0; v < n; v++) {
+            start[v] = (int) total;
+            int degree = degree(v);
+            if (degree >= minDegree) {
+                // At most half full
+                total += Integer.highestOneBit(degree) << 2;
+            }
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Edge index too large; raise minDegree");
+        }
+        start[n] = (int) total;
+        int[] table = new int[(int) total];
+        for (int v = 0; v < n; v++) {
+            int mask = start[v + 1] - start[v] - 1;
+            for (int i = offsets[v]; mask >= 0 && i < offsets[v + 1]; i++) {
+                int h = hash(targets[i]) & mask;
+                while (table[start[v] + h] != 0) {
+                    h = (h + 1) & mask;
+                }
+                table[start[v] + h] = i + 1;
+            }
+        }
+        slotStart = start;
+        slots = table;
+    }
+
+
+    // The edge set is fixed once built
+    public void removeEdge(int v, int w) {
+        throw new UnsupportedOperationException("GraphCSR is immutable");
+    }
+
+
+    // Returns true iff the graph has the edge
+    public boolean hasEdge(int v, int w) {
+        return weight(v, w) != 0;
+    }
+
+
+    // Returns an array containing the indicies of the neighbors of v
+    public int[] neighbors(int v) {
+        return Arrays.copyOfRange(targets, offsets[v], offsets[v + 1]);
+    }
+
+
+    // Return the number of neighbors of v
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+
+    // Visit the neighbors of v in order until the visitor returns false
+    public boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+        for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+            if (!visitor.visit(targets[i], weights[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // The backing arrays, for GraphSnapshot; they must not be modified
+    int[] offsets() {
+        return offsets;
+    }
+
+
+    int[] targets() {
+        return targets;
+    }
+
+
+    int[] weights() {
+        return weights;
+    }
+
+
+    // Return the i-th neighbor of v (0 <= i < degree(v)) without allocating
+    public int neighbor(int v, int i) {
+        return targets[offsets[v] + i];
+    }
+}
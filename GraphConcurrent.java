@@ -0,0 +1,433 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A mutable graph that any number of threads may read and update at once.
+ * 
+ * Each vertex's neighbor list is an immutable sorted Row. An update builds
+ * a new Row and publishes it with one atomic store (copy on write), so a
+ * reader always sees a complete list, either the old one or the new one,
+ * and never waits. Updates to the same vertex are serialized by one of a
+ * fixed set of striped locks. Updates to vertices in different stripes
+ * proceed in parallel, and there is no global lock.
+ * 
+ * A traversal reading this graph during updates sees every neighbor list
+ * as it was at some moment while the traversal ran. Each list is
+ * consistent on its own, but two lists may come from either side of an
+ * update: u -> v without v -> u, halfway through a friendship change.
+ *
+ * A traversal that needs the whole graph as of one moment reads
+ * snapshot() instead. Updates share the read side of a read-write lock,
+ * so they still run in parallel; snapshot() takes the write side just
+ * long enough to copy the row references, O(V) without copying any
+ * edge, between two updates. The snapshot is kept until the next update,
+ * so queries between updates share it.
+ */
+public class GraphConcurrent implements Graph {
+
+    // Number of writer locks; a power of two
+    private static final int STRIPES = 256;
+
+    private static final Row EMPTY = new Row(new int[0], new int[0]);
+
+    private AtomicReferenceArray<Row>    rows;
+    private AtomicReferenceArray<Object> nodeValues;
+    private final Object[]               locks = new Object[STRIPES];
+    private final AtomicInteger          numEdge = new AtomicInteger();
+
+    // Updates hold the read lock, snapshot() the write lock; the version
+    // counts the updates that changed a row
+    private final ReentrantReadWriteLock updates = new ReentrantReadWriteLock();
+    private final AtomicLong             version = new AtomicLong();
+    private volatile Snapshot            snapshot;
+
+
+    /**
+     * Empty no argument constructor; call init() before use
+     */
+    GraphConcurrent() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+
+    /**
+     * Copy the edges of any graph into a new GraphConcurrent
+     * 
+     * @param g the graph to copy
+     * @return a concurrent copy of g
+     */
+    static GraphConcurrent copyOf(Graph g) {
+        GraphConcurrent copy = new GraphConcurrent();
+        int n = g.nodeCount();
+        copy.init(n);
+        int edges = 0;
+        for (int v = 0; v < n; v++) {
+            int degree = g.degree(v);
+            if (degree > 0) {
+                Row row = new Row(new int[degree], new int[degree]);
+                int[] pos = {0};
+                g.forEachNeighbor(v, (w, wgt) -> {
+                    row.targets[pos[0]] = w;
+                    row.weights[pos[0]] = wgt;
+                    pos[0]++;
+                    return true;
+                });
+                copy.rows.set(v, row);
+                edges += degree;
+            }
+        }
+        copy.numEdge.set(edges);
+        return copy;
+    }
+
+
+    // Initialize the graph with n vertices
+    public void init(int n) {
+        AtomicReferenceArray<Row> empty = new AtomicReferenceArray<>(n);
+        for (int v = 0; v < n; v++) {
+            empty.set(v, EMPTY);
+        }
+        nodeValues = new AtomicReferenceArray<>(n);
+        numEdge.set(0);
+        rows = empty;
+        version.incrementAndGet();
+    }
+
+
+    /**
+     * The graph as of one moment between updates, which later updates do
+     * not change
+     *
+     * @return a read-only graph; its values are those of this graph
+     */
+    Graph snapshot() {
+        Snapshot last = snapshot;
+        if (last != null && last.version == version.get()) {
+            return last;
+        }
+        Lock lock = updates.writeLock();
+        lock.lock();
+        try {
+            AtomicReferenceArray<Row> current = rows;
+            Row[] frozen = new Row[current.length()];
+            for (int v = 0; v < frozen.length; v++) {
+                frozen[v] = current.get(v);
+            }
+            last = new Snapshot(frozen, numEdge.get(), nodeValues, version.get());
+            snapshot = last;
+            return last;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    // Return the number of vertices
+    public int nodeCount() {
+        return rows.length();
+    }
+
+
+    // Return the current number of edges
+    public int edgeCount() {
+        return numEdge.get();
+    }
+
+
+    // Get the value of node with index v
+    public Object getValue(int v) {
+        return nodeValues.get(v);
+    }
+
+
+    // Set the value of node with index v
+    public void setValue(int v, Object val) {
+        nodeValues.set(v, val);
+    }
+
+
+    // The lock serializing updates to v's row
+    private Object lock(int v) {
+        return locks[v & (STRIPES - 1)];
+    }
+
+
+    // Adds a new edge from node v to node w with weight wgt, or changes the
+    // weight of an existing edge
+    public void addEdge(int v, int w, int wgt) {
+        if (wgt == 0) {
+            return; // Can't store weight of 0
+        }
+        Lock shared = updates.readLock();
+        shared.lock();
+        try {
+            insert(v, w, wgt);
+        } finally {
+            shared.unlock();
+        }
+    }
+
+
+    // Add or update (v,w) under v's stripe lock; the caller holds the read
+    // lock
+    private void insert(int v, int w, int wgt) {
+        synchronized (lock(v)) {
+            Row row = rows.get(v);
+            int i = Arrays.binarySearch(row.targets, w);
+            if (i >= 0) {
+                if (row.weights[i] != wgt) {
+                    int[] weights = row.weights.clone();
+                    weights[i] = wgt;
+                    rows.set(v, new Row(row.targets, weights));
+                    version.incrementAndGet();
+                }
+                return;
+            }
+            i = -i - 1;
+            int degree = row.targets.length;
+            int[] targets = new int[degree + 1];
+            int[] weights = new int[degree + 1];
+            System.arraycopy(row.targets, 0, targets, 0, i);
+            System.arraycopy(row.weights, 0, weights, 0, i);
+            targets[i] = w;
+            weights[i] = wgt;
+            System.arraycopy(row.targets, i, targets, i + 1, degree - i);
+            System.arraycopy(row.weights, i, weights, i + 1, degree - i);
+            rows.set(v, new Row(targets, weights));
+            numEdge.incrementAndGet();
+            version.incrementAndGet();
+        }
+    }
+
+
+    // Add or update both (v,w) and (w,v) as one update, so concurrent
+    // changes to the same pair cannot leave the directions different, and
+    // no snapshot sees one direction without the other
+    void addEdgePair(int v, int w, int wgt) {
+        if (wgt == 0) {
+            return; // Can't store weight of 0
+        }
+        Lock shared = updates.readLock();
+        shared.lock();
+        try {
+            synchronized (firstLock(v, w)) {
+                synchronized (secondLock(v, w)) {
+                    insert(v, w, wgt);
+                    insert(w, v, wgt);
+                }
+            }
+        } finally {
+            shared.unlock();
+        }
+    }
+
+
+    // Remove both (v,w) and (w,v) as one update
+    void removeEdgePair(int v, int w) {
+        Lock shared = updates.readLock();
+        shared.lock();
+        try {
+            synchronized (firstLock(v, w)) {
+                synchronized (secondLock(v, w)) {
+                    delete(v, w);
+                    delete(w, v);
+                }
+            }
+        } finally {
+            shared.unlock();
+        }
+    }
+
+
+    // The stripe locks of a pair, always taken in stripe order
+    private Object firstLock(int v, int w) {
+        return locks[Math.min(v & (STRIPES - 1), w & (STRIPES - 1))];
+    }
+
+
+    private Object secondLock(int v, int w) {
+        return locks[Math.max(v & (STRIPES - 1), w & (STRIPES - 1))];
+    }
+
+
+    // Get the weight value for an edge
+    public int weight(int v, int w) {
+        Row row = rows.get(v);
+        int i = Arrays.binarySearch(row.targets, w);
+        return i < 0 ? 0 : row.weights[i];
+    }
+
+
+    // Removes the edge from the graph
+    public void removeEdge(int v, int w) {
+        Lock shared = updates.readLock();
+        shared.lock();
+        try {
+            delete(v, w);
+        } finally {
+            shared.unlock();
+        }
+    }
+
+
+    // Remove (v,w) under v's stripe lock; the caller holds the read lock
+    private void delete(int v, int w) {
+        synchronized (lock(v)) {
+            Row row = rows.get(v);
+            int i = Arrays.binarySearch(row.targets, w);
+            if (i < 0) {
+                return;
+            }
+            int degree = row.targets.length;
+            if (degree == 1) {
+                rows.set(v, EMPTY);
+            } else {
+                int[] targets = new int[degree - 1];
+                int[] weights = new int[degree - 1];
+                System.arraycopy(row.targets, 0, targets, 0, i);
+                System.arraycopy(row.weights, 0, weights, 0, i);
+                System.arraycopy(row.targets, i + 1, targets, i, degree - i - 1);
+                System.arraycopy(row.weights, i + 1, weights, i, degree - i - 1);
+                rows.set(v, new Row(targets, weights));
+            }
+            numEdge.decrementAndGet();
+            version.incrementAndGet();
+        }
+    }
+
+
+    // Returns true iff the graph has the edge
+    public boolean hasEdge(int v, int w) {
+        return weight(v, w) != 0;
+    }
+
+
+    // Returns an array containing the indicies of the neighbors of v
+    public int[] neighbors(int v) {
+        return rows.get(v).targets.clone();
+    }
+
+
+    // Return the number of neighbors of v
+    public int degree(int v) {
+        return rows.get(v).targets.length;
+    }
+
+
+    // Visit the neighbors of v, as of one moment, until the visitor
+    // returns false
+    public boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+        Row row = rows.get(v);
+        for (int i = 0; i < row.targets.length; i++) {
+            if (!visitor.visit(row.targets[i], row.weights[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // The rows of the graph at one moment; updates are not allowed
+    private static final class Snapshot implements Graph {
+        private final Row[]                        rows;
+        private final int                          edges;
+        private final AtomicReferenceArray<Object> nodeValues;
+        private final long                         version;
+
+
+        Snapshot(Row[] rows, int edges, AtomicReferenceArray<Object> nodeValues,
+                long version) {
+            this.rows = rows;
+            this.edges = edges;
+            this.nodeValues = nodeValues;
+            this.version = version;
+        }
+
+
+        public void init(int n) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+
+        public int nodeCount() {
+            return rows.length;
+        }
+
+
+        public int edgeCount() {
+            return edges;
+        }
+
+
+        public Object getValue(int v) {
+            return nodeValues.get(v);
+        }
+
+
+        public void setValue(int v, Object val) {
+            nodeValues.set(v, val);
+        }
+
+
+        public void addEdge(int v, int w, int wgt) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+
+        public int weight(int v, int w) {
+            Row row = rows[v];
+            int i = Arrays.binarySearch(row.targets, w);
+            return i < 0 ? 0 : row.weights[i];
+        }
+
+
+        public void removeEdge(int v, int w) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+
+        public boolean hasEdge(int v, int w) {
+            return weight(v, w) != 0;
+        }
+
+
+        public int[] neighbors(int v) {
+            return rows[v].targets.clone();
+        }
+
+
+        public int degree(int v) {
+            return rows[v].targets.length;
+        }
+
+
+        public boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+            Row row = rows[v];
+            for (int i = 0; i < row.targets.length; i++) {
+                if (!visitor.visit(row.targets[i], row.weights[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    // An immutable neighbor list, sorted by target
+    private static final class Row {
+        final int[] targets;
+        final int[] weights;
+
+
+        Row(int[] targets, int[] weights) {
+            this.targets = targets;
+            this.weights = weights;
+        }
+    }
+}
@@ -7,6 +7,7 @@ public class GraphL implements Graph {
 
     private Edge[]   nodeArray;
     private Object[] nodeValues;
+    private int[]    degrees;
     private int      numEdge;
 
 
@@ -22,11 +23,12 @@ public class GraphL implements Graph {
     // Initialize the graph with n vertices
     public void init(int n) {
         nodeArray = new Edge[n];
+        nodeValues = new Object[n];
+        degrees = new int[n];
+        numEdge = 0;
         // List headers;
         for (int i = 0; i < n; i++) {
             nodeArray[i] = new Edge(-1, -1, null, null);
-            nodeValues = new Object[n];
-            numEdge = 0;
         }
     }
 
@@ -75,14 +77,15 @@ public class GraphL implements Graph {
         }
         Edge curr = find(v, w);
         if ((curr.next != null) && (curr.next.vertex == w)) {
-            curr.next.weight = wgt;
+            curr.next.weight = wgt; // Only the weight changes
         } else {
             curr.next = new Edge(w, wgt, curr, curr.next);
             if (curr.next.next != null) {
                 curr.next.next.prev = curr.next;
             }
+            degrees[v]++;
+            numEdge++;
         }
-        numEdge++;
     }
 
 
@@ -107,6 +110,7 @@ public class GraphL implements Graph {
             if (curr.next != null) {
                 curr.next.prev = curr;
             }
+            degrees[v]--;
         }
         numEdge--;
     }
@@ -133,6 +137,40 @@ public class GraphL implements Graph {
         return temp;
     }
 
+
+    // Replace every edge with those of g in O(V + E), appending each
+    // neighbor list in order instead of searching for its position
+    void copyEdges(Graph g) {
+        init(g.nodeCount());
+        for (int v = 0; v < nodeArray.length; v++) {
+            Edge[] tail = {nodeArray[v]};
+            g.forEachNeighbor(v, (w, wgt) -> {
+                tail[0].next = new Edge(w, wgt, tail[0], null);
+                tail[0] = tail[0].next;
+                return true;
+            });
+            degrees[v] = g.degree(v);
+        }
+        numEdge = g.edgeCount();
+    }
+
+
+    // Return the number of neighbors of v
+    public int degree(int v) {
+        return degrees[v];
+    }
+
+
+    // Visit the neighbors of v in order until the visitor returns false
+    public boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+        for (Edge curr = nodeArray[v].next; curr != null; curr = curr.next) {
+            if (!visitor.visit(curr.vertex, curr.weight)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private class Edge { // Doubly linked list node
         int  vertex, weight;
         @SuppressWarnings("unused")
@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only graph in CSR form whose arrays live outside the Java heap,
+ * either in direct buffers or in a memory-mapped GraphSnapshot. The heap
+ * holds only the buffer objects and, once a value is set, the node values,
+ * so the graph can be far larger than the heap and the garbage collector
+ * never scans its edges.
+ * 
+ * The layout is the same as GraphCSR's: the neighbors of v are
+ * targets[offsets[v]] .. targets[offsets[v + 1] - 1], sorted, with the
+ * edge weights at the same positions.
+ */
+public class GraphOffHeap implements Graph {
+
+    private final IntSegments offsets;
+    private final IntSegments targets;
+    private final IntSegments weights;
+    private Object[]          nodeValues;
+
+
+    /**
+     * Wrap arrays that are already in CSR form
+     * 
+     * @param offsets the row start of every vertex, followed by the edge count
+     * @param targets the neighbors of every vertex, rows sorted
+     * @param weights the weight of every edge
+     */
+    GraphOffHeap(IntSegments offsets, IntSegments targets, IntSegments weights) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+
+    /**
+     * Copy the edges of any graph into direct buffers
+     * 
+     * @param g the graph to copy
+     * @return an off-heap copy of g
+     * @throws IllegalArgumentException if g has more edges than the int
+     *         offsets can address
+     */
+    static GraphOffHeap copyOf(Graph g) {
+        int n = g.nodeCount();
+        long edges = 0;
+        for (int v = 0; v < n; v++) {
+            edges += g.degree(v);
+        }
+        if (edges > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many edges for GraphOffHeap: " + edges);
+        }
+        IntSegments offsets = IntSegments.allocate(n + 1L);
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            offsets.put(v, m);
+            m += g.degree(v);
+        }
+        offsets.put(n, m);
+        IntSegments targets = IntSegments.allocate(m);
+        IntSegments weights = IntSegments.allocate(m);
+        int[] pos = {0};
+        for (int v = 0; v < n; v++) {
+            g.forEachNeighbor(v, (w, wgt) -> {
+                targets.put(pos[0], w);
+                weights.put(pos[0], wgt);
+                pos[0]++;
+                return true;
+            });
+        }
+        return new GraphOffHeap(offsets, targets, weights);
+    }
+
+
+    // The edge set is fixed; only the size can be read
+    public void init(int n) {
+        throw new UnsupportedOperationException("GraphOffHeap is read-only");
+    }
+
+
+    // Return the number of vertices
+    public int nodeCount() {
+        return (int) offsets.length() - 1;
+    }
+
+
+    // Return the current number of edges
+    public int edgeCount() {
+        return (int) targets.length();
+    }
+
+
+    // Get the value of node with index v
+    public Object getValue(int v) {
+        return nodeValues == null ? null : nodeValues[v];
+    }
+
+
+    // Set the value of node with index v
+    public void setValue(int v, Object val) {
+        if (nodeValues == null) {
+            nodeValues = new Object[nodeCount()];
+        }
+        nodeValues[v] = val;
+    }
+
+
+    // The edge set is fixed once built
+    public void addEdge(int v, int w, int wgt) {
+        throw new UnsupportedOperationException("GraphOffHeap is read-only");
+    }
+
+
+    // Get the weight value for an edge, by binary search of v's sorted row
+    public int weight(int v, int w) {
+        int lo = offsets.get(v);
+        int hi = offsets.get(v + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int target = targets.get(mid);
+            if (target < w) {
+                lo = mid + 1;
+            } else if (target > w) {
+                hi = mid - 1;
+            } else {
+                return weights.get(mid);
+            }
+        }
+        return 0;
+    }
+
+
+    // The edge set is fixed once built
+    public void removeEdge(int v, int w) {
+        throw new UnsupportedOperationException("GraphOffHeap is read-only");
+    }
+
+
+    // Returns true iff the graph has the edge
+    public boolean hasEdge(int v, int w) {
+        return weight(v, w) != 0;
+    }
+
+
+    // Returns an array containing the indicies of the neighbors of v
+    public int[] neighbors(int v) {
+        int start = offsets.get(v);
+        int[] temp = new int[offsets.get(v + 1) - start];
+        for (int i = 0; i < temp.length; i++) {
+            temp[i] = targets.get(start + i);
+        }
+        return temp;
+    }
+
+
+    // Return the number of neighbors of v
+    public int degree(int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+
+    // Visit the neighbors of v in order until the visitor returns false
+    public boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+        for (int i = offsets.get(v), end = offsets.get(v + 1); i < end; i++) {
+            if (!visitor.visit(targets.get(i), weights.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * A little-endian int array split over buffers of at most 2^28 ints,
+     * since a single buffer cannot hold more than 2 GB.
+     */
+    static final class IntSegments {
+        static final int  SHIFT = 28;
+        static final int  MASK  = (1 << SHIFT) - 1;
+
+        private final ByteBuffer[] bytes;
+        private final IntBuffer[]  ints;
+        private final long         length;
+
+
+        private IntSegments(ByteBuffer[] bytes, long length) {
+            this.bytes = bytes;
+            this.length = length;
+            ints = new IntBuffer[bytes.length];
+            for (int s = 0; s < bytes.length; s++) {
+                ints[s] = bytes[s].order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+        }
+
+
+        // A zeroed array of the given length in direct buffers
+        static IntSegments allocate(long length) {
+            ByteBuffer[] bytes = new ByteBuffer[segments(length)];
+            for (int s = 0; s < bytes.length; s++) {
+                bytes[s] = ByteBuffer.allocateDirect(4 * segmentLength(length, s));
+            }
+            return new IntSegments(bytes, length);
+        }
+
+
+        // The array of the given length stored at pos in a file
+        static IntSegments map(FileChannel channel, long pos, long length)
+                throws IOException {
+            ByteBuffer[] bytes = new ByteBuffer[segments(length)];
+            for (int s = 0; s < bytes.length; s++) {
+                bytes[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        pos + 4L * ((long) s << SHIFT), 4L * segmentLength(length, s));
+            }
+            return new IntSegments(bytes, length);
+        }
+
+
+        private static int segments(long length) {
+            return (int) Math.max(1, (length + MASK) >>> SHIFT);
+        }
+
+
+        private static int segmentLength(long length, int s) {
+            return (int) Math.min(1L << SHIFT, length - ((long) s << SHIFT));
+        }
+
+
+        long length() {
+            return length;
+        }
+
+
+        int get(int i) {
+            return ints[i >>> SHIFT].get(i & MASK);
+        }
+
+
+        void put(int i, int value) {
+            ints[i >>> SHIFT].put(i & MASK, value);
+        }
+
+
+        // Add the bytes of the array to a checksum
+        void update(CRC32 crc) {
+            for (ByteBuffer segment : bytes) {
+                crc.update(segment.duplicate().clear());
+            }
+        }
+
+
+        // Copy the whole array into dst
+        void copyTo(int[] dst) {
+            for (int s = 0; s < ints.length; s++) {
+                ints[s].duplicate().clear().get(dst, s << SHIFT, ints[s].capacity());
+            }
+        }
+    }
+}
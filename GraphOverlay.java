@@ -0,0 +1,397 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * A mutable view of a read-only graph. Edge changes are appended to an
+ * EdgeDeltaLog and kept as small per-vertex patches on top of the base
+ * graph, so a few thousand updates cost a few thousand small arrays rather
+ * than a rebuild. Every query answers from the base graph merged with the
+ * patches.
+ *
+ * compact() merges the patches into a new base graph, built off to the
+ * side while updates and queries continue, and then swaps it in with one
+ * atomic store. Updates made while the new base was being built are
+ * replayed onto it from the log, so none are lost.
+ *
+ * Updates are serialized by one lock. Readers never lock: a patch, like a
+ * row of GraphConcurrent, is an immutable array replaced on every change,
+ * and a traversal sees each neighbor list as it was at some moment while
+ * the traversal ran.
+ */
+public class GraphOverlay implements Graph {
+
+    private volatile State     state;
+    private final EdgeDeltaLog log = new EdgeDeltaLog();
+    private final Object       compaction = new Object();
+    private Object[]           nodeValues;
+
+
+    /**
+     * Wrap a read-only graph, which the overlay never changes
+     *
+     * @param base the graph to start from
+     */
+    GraphOverlay(Graph base) {
+        this.state = new State(base);
+    }
+
+
+    // A frozen view of one state, for building the next base graph
+    private GraphOverlay(State state) {
+        this.state = state;
+    }
+
+
+    /**
+     * @return the base graph the patches apply to
+     */
+    Graph base() {
+        return state.base;
+    }
+
+
+    /**
+     * @return the number of changes not yet merged into the base graph
+     */
+    synchronized int pendingDeltas() {
+        return log.size();
+    }
+
+
+    // Initialize the graph with n vertices and no edges
+    public synchronized void init(int n) {
+        GraphCSR empty = new GraphCSR();
+        empty.init(n);
+        log.clear();
+        nodeValues = null;
+        state = new State(empty);
+    }
+
+
+    // Return the number of vertices
+    public int nodeCount() {
+        return state.base.nodeCount();
+    }
+
+
+    // Return the current number of edges
+    public int edgeCount() {
+        return state.edges;
+    }
+
+
+    // Get the value of node with index v
+    public synchronized Object getValue(int v) {
+        return nodeValues == null ? null : nodeValues[v];
+    }
+
+
+    // Set the value of node with index v; values are kept here so that
+    // they survive compaction
+    public synchronized void setValue(int v, Object val) {
+        if (nodeValues == null) {
+            nodeValues = new Object[nodeCount()];
+        }
+        nodeValues[v] = val;
+    }
+
+
+    // Adds a new edge from node v to node w with weight wgt, or changes the
+    // weight of an existing edge
+    public synchronized void addEdge(int v, int w, int wgt) {
+        if (wgt == 0) {
+            return; // Can't store weight of 0
+        }
+        apply(EdgeDeltaLog.ADD, v, w, wgt);
+    }
+
+
+    // Removes the edge from the graph
+    public synchronized void removeEdge(int v, int w) {
+        apply(EdgeDeltaLog.REMOVE, v, w, 0);
+    }
+
+
+    // Add or update both (v,w) and (w,v) as one update
+    synchronized void addEdgePair(int v, int w, int wgt) {
+        addEdge(v, w, wgt);
+        addEdge(w, v, wgt);
+    }
+
+
+    // Remove both (v,w) and (w,v) as one update
+    synchronized void removeEdgePair(int v, int w) {
+        removeEdge(v, w);
+        removeEdge(w, v);
+    }
+
+
+    // Apply a change to the current state and log it if it took effect
+    private void apply(byte op, int v, int w, int wgt) {
+        byte done = state.apply(op, v, w, wgt);
+        if (done != 0) {
+            log.append(done, v, w, wgt);
+        }
+    }
+
+
+    /**
+     * Merge every pending change into a new base graph and swap it in.
+     * Queries and updates keep running while the new base is built; only
+     * the final swap holds the update lock, for as long as it takes to
+     * replay the changes made in the meantime. One compaction runs at a
+     * time.
+     *
+     * @param rebuild converts the merged GraphCSR to the graph used as the
+     *                new base, for example an off-heap copy
+     * @return the number of changes merged
+     */
+    int compact(UnaryOperator<Graph> rebuild) {
+        synchronized (compaction) {
+            int merged;
+            State frozen;
+            synchronized (this) {
+                merged = log.size();
+                if (merged == 0) {
+                    return 0;
+                }
+                frozen = state.freeze();
+            }
+
+            // The patches are immutable, so the frozen view can be read
+            // without the lock
+            Graph base = rebuild.apply(GraphCSR.copyOf(new GraphOverlay(frozen)));
+
+            synchronized (this) {
+                State next = new State(base);
+                for (int i = merged; i < log.size(); i++) {
+                    next.apply(log.op(i), log.from(i), log.to(i), log.weight(i));
+                }
+                log.discard(merged);
+                state = next;
+            }
+            return merged;
+        }
+    }
+
+
+    // Get the weight value for an edge
+    public int weight(int v, int w) {
+        return state.weight(v, w);
+    }
+
+
+    // Returns true iff the graph has the edge
+    public boolean hasEdge(int v, int w) {
+        return weight(v, w) != 0;
+    }
+
+
+    // Returns an array containing the indicies of the neighbors of v
+    public int[] neighbors(int v) {
+        State s = state;
+        int[] neighbors = new int[s.degree(v)];
+        int[] pos = {0};
+        s.forEachNeighbor(v, (w, wgt) -> {
+            // The row may have grown since degree() was read
+            if (pos[0] < neighbors.length) {
+                neighbors[pos[0]++] = w;
+            }
+            return true;
+        });
+        return pos[0] == neighbors.length ? neighbors : Arrays.copyOf(neighbors, pos[0]);
+    }
+
+
+    // Return the number of neighbors of v
+    public int degree(int v) {
+        return state.degree(v);
+    }
+
+
+    // Visit the neighbors of v, as of one moment, until the visitor
+    // returns false
+    public boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+        return state.forEachNeighbor(v, visitor);
+    }
+
+
+    // A base graph and the patches applied to it
+    private static final class State {
+        final Graph                     base;
+        final AtomicReferenceArray<Row> patches;
+        volatile int                    edges;
+
+
+        State(Graph base) {
+            this.base = base;
+            this.patches = new AtomicReferenceArray<>(base.nodeCount());
+            this.edges = base.edgeCount();
+        }
+
+
+        private State(Graph base, AtomicReferenceArray<Row> patches, int edges) {
+            this.base = base;
+            this.patches = patches;
+            this.edges = edges;
+        }
+
+
+        // A copy whose patches no longer change
+        State freeze() {
+            int n = patches.length();
+            AtomicReferenceArray<Row> copy = new AtomicReferenceArray<>(n);
+            for (int v = 0; v < n; v++) {
+                Row row = patches.get(v);
+                if (row != null) {
+                    copy.set(v, row);
+                }
+            }
+            return new State(base, copy, edges);
+        }
+
+
+        int weight(int v, int w) {
+            Row row = patches.get(v);
+            if (row != null) {
+                int i = Arrays.binarySearch(row.targets, w);
+                if (i >= 0) {
+                    return row.weights[i];
+                }
+            }
+            return base.weight(v, w);
+        }
+
+
+        int degree(int v) {
+            Row row = patches.get(v);
+            return base.degree(v) + (row == null ? 0 : row.degreeChange);
+        }
+
+
+        boolean forEachNeighbor(int v, NeighborVisitor visitor) {
+            Row row = patches.get(v);
+            if (row == null) {
+                return base.forEachNeighbor(v, visitor);
+            }
+            Merge merge = new Merge(row, visitor);
+            return base.forEachNeighbor(v, merge) && merge.finish();
+        }
+
+
+        /**
+         * Apply one change, called with the overlay's lock held
+         *
+         * @return the record describing the change (ADD, WEIGHT or REMOVE),
+         *         or 0 if the graph did not change
+         */
+        byte apply(byte op, int v, int w, int wgt) {
+            int current = weight(v, w);
+            int next = op == EdgeDeltaLog.REMOVE ? 0 : wgt;
+            if (next == current) {
+                return 0;
+            }
+            Row row = patches.get(v);
+            patches.set(v, Row.with(row, w, next, base.weight(v, w) != 0,
+                    (next != 0 ? 1 : 0) - (current != 0 ? 1 : 0)));
+            edges += (next != 0 ? 1 : 0) - (current != 0 ? 1 : 0);
+            return next == 0 ? EdgeDeltaLog.REMOVE
+                    : current == 0 ? EdgeDeltaLog.ADD : EdgeDeltaLog.WEIGHT;
+        }
+    }
+
+
+    // The changed edges of one vertex, sorted by target; a weight of 0 marks
+    // an edge removed from the base graph
+    private static final class Row {
+        final int[] targets;
+        final int[] weights;
+        final int   degreeChange;
+
+
+        Row(int[] targets, int[] weights, int degreeChange) {
+            this.targets = targets;
+            this.weights = weights;
+            this.degreeChange = degreeChange;
+        }
+
+
+        // A copy of row (which may be null) with the (v,w) entry set to wgt.
+        // An entry that would only repeat an absent base edge is left out.
+        static Row with(Row row, int w, int wgt, boolean inBase, int degreeChange) {
+            int[] targets = row == null ? new int[0] : row.targets;
+            int[] weights = row == null ? new int[0] : row.weights;
+            int change = (row == null ? 0 : row.degreeChange) + degreeChange;
+            int i = Arrays.binarySearch(targets, w);
+            int degree = targets.length;
+            if (i >= 0) {
+                if (wgt == 0 && !inBase) {
+                    if (degree == 1) {
+                        return null;
+                    }
+                    int[] t = new int[degree - 1];
+                    int[] x = new int[degree - 1];
+                    System.arraycopy(targets, 0, t, 0, i);
+                    System.arraycopy(weights, 0, x, 0, i);
+                    System.arraycopy(targets, i + 1, t, i, degree - i - 1);
+                    System.arraycopy(weights, i + 1, x, i, degree - i - 1);
+                    return new Row(t, x, change);
+                }
+                int[] x = weights.clone();
+                x[i] = wgt;
+                return new Row(targets, x, change);
+            }
+            i = -i - 1;
+            int[] t = new int[degree + 1];
+            int[] x = new int[degree + 1];
+            System.arraycopy(targets, 0, t, 0, i);
+            System.arraycopy(weights, 0, x, 0, i);
+            t[i] = w;
+            x[i] = wgt;
+            System.arraycopy(targets, i, t, i + 1, degree - i);
+            System.arraycopy(weights, i, x, i + 1, degree - i);
+            return new Row(t, x, change);
+        }
+    }
+
+
+    // Walks a base row and a patch together, both sorted by target
+    private static final class Merge implements NeighborVisitor {
+        private final Row             row;
+        private final NeighborVisitor visitor;
+        private int                   i;
+
+
+        Merge(Row row, NeighborVisitor visitor) {
+            this.row = row;
+            this.visitor = visitor;
+        }
+
+
+        public boolean visit(int w, int wgt) {
+            // Patched edges the base row does not have, before w
+            while (i < row.targets.length && row.targets[i] < w) {
+                if (!visitor.visit(row.targets[i], row.weights[i++])) {
+                    return false;
+                }
+            }
+            if (i < row.targets.length && row.targets[i] == w) {
+                int patched = row.weights[i++];
+                return patched == 0 || visitor.visit(w, patched);
+            }
+            return visitor.visit(w, wgt);
+        }
+
+
+        // The patched edges after the last base edge
+        boolean finish() {
+            while (i < row.targets.length) {
+                if (!visitor.visit(row.targets[i], row.weights[i++])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A binary image of a loaded graph that can be reopened without parsing.
+ * 
+ * The file is little-endian: a fixed header followed by the CSR arrays of
+ * the graph.
+ * 
+ *   offset  size  field
+ *        0     4  magic "SNGR"
+ *        4     4  format version
+ *        8     4  node count n
+ *       12     4  edge count m
+ *       16     4  number of nodes with at least one edge
+ *       20     4  reserved, 0
+ *       24     8  size of the source data set when the snapshot was taken
+ *       32     8  last modified time of the source data set, in millis
+ *       40     8  CRC-32 of bytes 0..39 and of everything after the header
+ *       48        offsets (n + 1 ints), targets (m ints), weights (m ints)
+ * 
+ * A snapshot is rejected when the magic or version differ, when the file
+ * is shorter or longer than the header says, when the checksum does not
+ * match, or when the source data set no longer has the recorded size and
+ * modification time. Snapshots are written to a temporary file that is
+ * then renamed, so a crash never leaves a half written snapshot behind.
+ * 
+ * read() copies the arrays into a GraphCSR; open() serves the graph
+ * straight from the mapped file as a GraphOffHeap.
+ */
+public class GraphSnapshot {
+
+    static final int MAGIC   = 0x52474E53; // "SNGR" in little-endian order
+    static final int VERSION = 1;
+    static final int HEADER  = 48;
+
+    // Bytes copied per write while saving
+    private static final int BLOCK = 1 << 20;
+
+    private final Graph graph;
+    private final int   activeNodes;
+
+
+    private GraphSnapshot(Graph graph, int activeNodes) {
+        this.graph = graph;
+        this.activeNodes = activeNodes;
+    }
+
+
+    /**
+     * @return the graph read from the snapshot
+     */
+    Graph graph() {
+        return graph;
+    }
+
+
+    /**
+     * @return the number of nodes with at least one edge
+     */
+    int activeNodes() {
+        return activeNodes;
+    }
+
+
+    /**
+     * Write a snapshot of a graph. The edges are streamed from the graph, so
+     * no copy of it is made on the heap.
+     * 
+     * @param g           the graph to save
+     * @param activeNodes the number of nodes with at least one edge
+     * @param source      the data set the graph was loaded from, or null
+     * @param path        the snapshot file to write
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void save(Graph g, int activeNodes, Path source, Path path)
+            throws IOException {
+        int n = g.nodeCount();
+        long edges = 0;
+        for (int v = 0; v < n; v++) {
+            edges += g.degree(v);
+        }
+        if (edges > Integer.MAX_VALUE) {
+            throw new IOException("Too many edges for a snapshot: " + edges);
+        }
+        int m = (int) edges;
+        ByteBuffer header = header(n, m, activeNodes, source);
+        CRC32 crc = new CRC32();
+        crc.update(header.duplicate().limit(HEADER - 8));
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.position(HEADER);
+            Writer writer = new Writer(out, crc);
+            int offset = 0;
+            for (int v = 0; v < n; v++) {
+                writer.putInt(offset);
+                offset += g.degree(v);
+            }
+            writer.putInt(offset);
+            for (int v = 0; v < n; v++) {
+                g.forEachNeighbor(v, writer.targets);
+            }
+            for (int v = 0; v < n; v++) {
+                g.forEachNeighbor(v, writer.weights);
+            }
+            writer.flush();
+            header.putLong(HEADER - 8, crc.getValue());
+            out.write(header, 0);
+            out.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    // The header of a snapshot, with the checksum still 0
+    private static ByteBuffer header(int n, int m, int activeNodes, Path source)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, n);
+        header.putInt(12, m);
+        header.putInt(16, activeNodes);
+        if (source != null) {
+            header.putLong(24, Files.size(source));
+            header.putLong(32, Files.getLastModifiedTime(source).toMillis());
+        }
+        return header;
+    }
+
+
+    /**
+     * Read a snapshot into a GraphCSR on the heap
+     * 
+     * @param path   the snapshot file
+     * @param source the data set the snapshot must match, or null to skip
+     *               that check
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, is stale or corrupt
+     */
+    static GraphSnapshot read(Path path, Path source) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            Sections sections = map(in, path, source);
+            int[] offsets = new int[sections.n + 1];
+            int[] targets = new int[sections.m];
+            int[] weights = new int[sections.m];
+            sections.offsets.copyTo(offsets);
+            sections.targets.copyTo(targets);
+            sections.weights.copyTo(weights);
+            return new GraphSnapshot(new GraphCSR(offsets, targets, weights),
+                    sections.activeNodes);
+        }
+    }
+
+
+    /**
+     * Open a snapshot as a GraphOffHeap reading straight from the mapped
+     * file; nothing is copied onto the heap
+     * 
+     * @param path   the snapshot file
+     * @param source the data set the snapshot must match, or null to skip
+     *               that check
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, is stale or corrupt
+     */
+    static GraphSnapshot open(Path path, Path source) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Mappings stay valid after the channel is closed
+            Sections sections = map(in, path, source);
+            return new GraphSnapshot(new GraphOffHeap(sections.offsets,
+                    sections.targets, sections.weights), sections.activeNodes);
+        }
+    }
+
+
+    /**
+     * Map the sections of a snapshot after validating its header, size and
+     * checksum
+     */
+    private static Sections map(FileChannel in, Path path, Path source)
+            throws IOException {
+        if (in.size() < HEADER) {
+            throw new IOException(path + " is truncated");
+        }
+        ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a graph snapshot");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException(path + " has unsupported version " + header.getInt(4));
+        }
+        Sections sections = new Sections();
+        sections.n = header.getInt(8);
+        sections.m = header.getInt(12);
+        sections.activeNodes = header.getInt(16);
+        long expected = HEADER + 4L * (sections.n + 1) + 8L * sections.m;
+        if (sections.n < 0 || sections.m < 0 || in.size() != expected) {
+            throw new IOException(path + " is truncated or has trailing data");
+        }
+        if (source != null && (header.getLong(24) != Files.size(source)
+                || header.getLong(32) != Files.getLastModifiedTime(source).toMillis())) {
+            throw new IOException(path + " is stale: " + source + " has changed");
+        }
+
+        long pos = HEADER;
+        sections.offsets = GraphOffHeap.IntSegments.map(in, pos, sections.n + 1L);
+        pos += 4L * (sections.n + 1);
+        sections.targets = GraphOffHeap.IntSegments.map(in, pos, sections.m);
+        pos += 4L * sections.m;
+        sections.weights = GraphOffHeap.IntSegments.map(in, pos, sections.m);
+
+        CRC32 crc = new CRC32();
+        crc.update(header.duplicate().limit(HEADER - 8));
+        sections.offsets.update(crc);
+        sections.targets.update(crc);
+        sections.weights.update(crc);
+        if (crc.getValue() != header.getLong(HEADER - 8)) {
+            throw new IOException(path + " fails its checksum");
+        }
+        return sections;
+    }
+
+
+    // The mapped arrays of a validated snapshot
+    private static final class Sections {
+        int                      n;
+        int                      m;
+        int                      activeNodes;
+        GraphOffHeap.IntSegments offsets;
+        GraphOffHeap.IntSegments targets;
+        GraphOffHeap.IntSegments weights;
+    }
+
+
+    // Buffers ints on their way to the file, updating the checksum
+    private static final class Writer {
+        private final FileChannel out;
+        private final CRC32       crc;
+        private final ByteBuffer  block =
+            ByteBuffer.allocateDirect(BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+        private IOException       failure;
+
+        // Visitors writing the neighbor or the weight of each edge
+        final NeighborVisitor targets = (w, wgt) -> putInt(w);
+        final NeighborVisitor weights = (w, wgt) -> putInt(wgt);
+
+
+        Writer(FileChannel out, CRC32 crc) {
+            this.out = out;
+            this.crc = crc;
+        }
+
+
+        // Append one int; false once writing has failed
+        boolean putInt(int value) {
+            if (!block.hasRemaining()) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    failure = e;
+                    return false;
+                }
+            }
+            block.putInt(value);
+            return true;
+        }
+
+
+        void flush() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            block.flip();
+            crc.update(block.duplicate());
+            while (block.hasRemaining()) {
+                out.write(block);
+            }
+            block.clear();
+        }
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.time.Instant;
 import java.util.Map;
@@ -18,9 +21,92 @@ public interface ISocialNetwork {
      */
     public int getShortestPathUnweighted(int user1, int user2);
 
+    /**
+     * Returns the unweighted distance from a user to every user in the graph,
+     * computed with a single search. Use it instead of calling
+     * getShortestPathUnweighted() repeatedly with the same first user.
+     * @param userId - the user to measure distances from
+     * @return an array indexed by user ID holding the distance from userId,
+     *          or Integer.MAX_VALUE for users that cannot be reached
+     * @throws UnsupportedOperationException if the implementation does not
+     *          know its number of users, as the default one does not
+     */
+    public default int[] distancesFrom(int userId) {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " does not compute distances to every user");
+    }
+
+    /**
+     * Returns the length of the shortest path between two users when every
+     * friendship counts as the inverse of its strength: a friendship of
+     * strength 1 is one hop long, one of strength 0.25 four hops long.
+     * @param user1 - one user
+     * @param user2 - the other user
+     * @return the length of the path, or Double.POSITIVE_INFINITY if there
+     *          is none
+     * @throws UnsupportedOperationException if the implementation does not
+     *          keep friendship strengths, as the default one does not
+     */
+    public default double getShortestPathWeighted(int user1, int user2) {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " does not keep friendship strengths");
+    }
+
+    /**
+     * Returns the users whose getShortestPathWeighted() distance from a user
+     * is at most radius, the user itself included, closest first. The
+     * search stops at the radius instead of exploring the whole graph.
+     * @param radius - the largest weighted distance to include
+     * @param userId - the user to measure distances from
+     * @return the users within the radius, in increasing order of distance
+     * @throws UnsupportedOperationException if the implementation does not
+     *          keep friendship strengths, as the default one does not
+     */
+    public default List<Integer> recommendationByWeightedDistance(double radius, int userId) {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " does not keep friendship strengths");
+    }
+
+    /**
+     * Returns the users who are friends of a user's friends but not yet the
+     * user's friends, ranked by the number of friends they share with the
+     * user, or by the strength of the friendships through those mutual
+     * friends.
+     * @param userId - the user to recommend friends to
+     * @param k - the most users to return
+     * @param weighted - true to rank by friendship strength, false to rank
+     *          by the number of mutual friends
+     * @return at most k users, best first; ties go to the lower user ID
+     * @throws UnsupportedOperationException if weighted and the
+     *          implementation does not keep friendship strengths; the
+     *          default one counts mutual friends with
+     *          recommendationByDistance() and does not
+     */
+    public default List<Integer> recommendFriends(int userId, int k, boolean weighted) {
+        if (weighted) {
+            throw new UnsupportedOperationException(
+                    getClass().getSimpleName() + " does not keep friendship strengths");
+        }
+        // The users fewer than 2 connections away are the user and its friends
+        List<Integer> friends = recommendationByDistance(2, userId);
+        Map<Integer, Integer> mutual = new HashMap<>();
+        for (int friend : friends) {
+            if (friend != userId) {
+                for (int candidate : recommendationByDistance(2, friend)) {
+                    mutual.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }
+        mutual.keySet().removeAll(friends);
+        List<Integer> ranked = new ArrayList<>(mutual.keySet());
+        ranked.sort((a, b) -> mutual.get(a).equals(mutual.get(b))
+                ? Integer.compare(a, b) : Integer.compare(mutual.get(b), mutual.get(a)));
+        return new ArrayList<>(ranked.subList(0, Math.min(Math.max(k, 0), ranked.size())));
+    }
+
     /**
      *  Returns a sort list of recommended users based on distance from
-     *  getShortestPathWeighted(). For example, return all recommendations < 3
+     *  getShortestPathUnweighted(). For example, return all recommendations < 3
      *  connections away
      * @param distance
      * @param userId
@@ -108,8 +194,30 @@ public interface ISocialNetwork {
      * @param earliest: timeframe for getting activities 
      * @param likedPosts: map returned from postByUser
      * @return a map of post IDs and list of friends who liked them: 
-      *         ordered by the timeStamp of friends liking them 
+      *         ordered by the timeStamp of friends liking them, newest first
       */
     public Map<Integer, List<Integer>> recommendPost(int userId, Instant earliest,
                                         Map<Integer, List<LikedPost>> likedPosts);
+
+    /**
+     * recommend the most recent posts my friends liked, for one page of a feed
+     * @param userId: user to recommend post to
+     * @param earliest: timeframe for getting activities
+     * @param likedPosts: map returned from postByUser
+     * @param limit: the most posts to return
+     * @return the first limit posts of recommendPost(), in the same order,
+     *         each with all the friends who liked it
+     */
+    public default Map<Integer, List<Integer>> recommendPost(int userId, Instant earliest,
+                                        Map<Integer, List<LikedPost>> likedPosts, int limit) {
+        Map<Integer, List<Integer>> page = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Integer>> post
+                : recommendPost(userId, earliest, likedPosts).entrySet()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.put(post.getKey(), post.getValue());
+        }
+        return page;
+    }
 }
@@ -0,0 +1,158 @@
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The users of every interest as a bitset over user IDs.
+ *
+ * There are few interests and the user IDs are dense, so one bit per user
+ * per interest is far smaller than lists of boxed IDs, and combining
+ * interests is word-level work: an AND or OR of two interests touches
+ * n / 64 longs. Membership is a single bit test and cardinality a
+ * population count.
+ *
+ * The index is immutable; every method returning a BitSet returns a new
+ * one the caller may change.
+ */
+public class InterestIndex {
+
+    private final BitSet[] users;
+
+
+    private InterestIndex(BitSet[] users) {
+        this.users = users;
+    }
+
+
+    /**
+     * Build the index from a map of users to their interests, as returned
+     * by loadUserInterests()
+     *
+     * @param interestsByUser the interest IDs of every user
+     * @return the index
+     */
+    public static InterestIndex of(Map<Integer, List<Integer>> interestsByUser) {
+        int interests = 0;
+        int maxUser = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : interestsByUser.entrySet()) {
+            maxUser = Math.max(maxUser, entry.getKey());
+            for (int interest : entry.getValue()) {
+                interests = Math.max(interests, interest + 1);
+            }
+        }
+        BitSet[] users = new BitSet[interests];
+        for (int i = 0; i < interests; i++) {
+            users[i] = new BitSet(maxUser + 1);
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : interestsByUser.entrySet()) {
+            for (int interest : entry.getValue()) {
+                users[interest].set(entry.getKey());
+            }
+        }
+        return new InterestIndex(users);
+    }
+
+
+    /**
+     * Build the index from parsed interests
+     *
+     * @param table the interests of every user
+     * @return the index
+     */
+    public static InterestIndex of(UserInterests table) {
+        int[] offsets = table.offsets();
+        int[] interests = table.interests();
+        int count = 0;
+        for (int interest : interests) {
+            count = Math.max(count, interest + 1);
+        }
+        BitSet[] users = new BitSet[count];
+        for (int i = 0; i < count; i++) {
+            users[i] = new BitSet(table.userBound());
+        }
+        for (int user = 0; user < table.userBound(); user++) {
+            for (int i = offsets[user]; i < offsets[user + 1]; i++) {
+                users[interests[i]].set(user);
+            }
+        }
+        for (int user : table.sparseUsers()) {
+            for (int interest : table.interestsOf(user)) {
+                users[interest].set(user);
+            }
+        }
+        return new InterestIndex(users);
+    }
+
+
+    /**
+     * @return one more than the largest interest ID
+     */
+    public int interestCount() {
+        return users.length;
+    }
+
+
+    /**
+     * @param userId     the user
+     * @param interestId the interest
+     * @return true iff the user has the interest
+     */
+    public boolean hasInterest(int userId, int interestId) {
+        return interestId >= 0 && interestId < users.length && users[interestId].get(userId);
+    }
+
+
+    /**
+     * @param interestId the interest
+     * @return the number of users with the interest
+     */
+    public int cardinality(int interestId) {
+        return interestId >= 0 && interestId < users.length
+                ? users[interestId].cardinality() : 0;
+    }
+
+
+    /**
+     * @param interestId the interest
+     * @return the users with the interest
+     */
+    public BitSet users(int interestId) {
+        return interestId >= 0 && interestId < users.length
+                ? (BitSet) users[interestId].clone() : new BitSet();
+    }
+
+
+    /**
+     * @param interestIds the interests
+     * @return the users with every one of the interests, or none if no
+     *         interest is given
+     */
+    public BitSet allOf(int... interestIds) {
+        if (interestIds.length == 0) {
+            return new BitSet();
+        }
+        BitSet result = users(interestIds[0]);
+        for (int i = 1; i < interestIds.length && !result.isEmpty(); i++) {
+            if (interestIds[i] < 0 || interestIds[i] >= users.length) {
+                return new BitSet();
+            }
+            result.and(users[interestIds[i]]);
+        }
+        return result;
+    }
+
+
+    /**
+     * @param interestIds the interests
+     * @return the users with at least one of the interests
+     */
+    public BitSet anyOf(int... interestIds) {
+        BitSet result = new BitSet();
+        for (int interest : interestIds) {
+            if (interest >= 0 && interest < users.length) {
+                result.or(users[interest]);
+            }
+        }
+        return result;
+    }
+}
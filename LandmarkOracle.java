@@ -0,0 +1,221 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Approximate shortest path distances from a few precomputed searches.
+ *
+ * The oracle picks k landmark vertices and stores the distance from each of
+ * them to every vertex. By the triangle inequality, for any landmark L
+ *
+ *   |d(u,L) - d(v,L)|  <=  d(u,v)  <=  d(u,L) + d(L,v)
+ *
+ * so the tightest bounds over all landmarks bracket the true distance in
+ * O(k) time without searching the graph. The distances of one vertex to
+ * all landmarks are stored next to each other, so a query reads two short
+ * runs of memory.
+ *
+ * Two vertices in a component without landmarks are unreachable from
+ * every landmark, exactly like two vertices in different components, so
+ * the table cannot tell those cases apart. The upper bound then says it
+ * does not know, and callers search instead.
+ *
+ * Landmarks are either the highest degree vertices, which lie on many
+ * shortest paths, skipping any vertex next to a landmark already chosen,
+ * or vertices picked at random. The oracle describes the graph as it was
+ * when built; it must be rebuilt after the graph changes.
+ */
+public class LandmarkOracle {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // The upper bound of two vertices that no landmark reaches
+    static final int UNKNOWN = -1;
+
+    private final int[] landmarks;
+    // Distance from landmark i to vertex v at distances[v * k + i]
+    private final int[] distances;
+    private final int   n;
+
+
+    private LandmarkOracle(int[] landmarks, int[] distances, int n) {
+        this.landmarks = landmarks;
+        this.distances = distances;
+        this.n = n;
+    }
+
+
+    /**
+     * Choose landmarks and search from each of them
+     *
+     * @param g             the graph
+     * @param count         the number of landmarks
+     * @param highestDegree true to choose high degree vertices, false to
+     *                      choose at random
+     * @param seed          the seed for random choices
+     * @param pool          the pool running the searches, or null to run
+     *                      them on the calling thread
+     * @return the oracle
+     * @throws IllegalArgumentException if count landmarks would need a
+     *         distance table larger than an array can hold
+     */
+    static LandmarkOracle build(Graph g, int count, boolean highestDegree, long seed,
+            ForkJoinPool pool) {
+        if ((long) g.nodeCount() * Math.min(count, g.nodeCount()) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Landmark table too large; use fewer landmarks");
+        }
+        int[] chosen = highestDegree ? byDegree(g, count) : atRandom(g, count, seed);
+        int k = chosen.length;
+        int n = g.nodeCount();
+        int[] distances = new int[n * k];
+        GraphCSR.parallelFor(pool, k, i -> {
+            int[] from = new BreadthFirstSearch().distances(g, chosen[i]);
+            for (int v = 0; v < n; v++) {
+                distances[v * k + i] = from[v];
+            }
+        });
+        return new LandmarkOracle(chosen, distances, n);
+    }
+
+
+    // The highest degree vertices, skipping neighbors of those already chosen
+    private static int[] byDegree(Graph g, int count) {
+        int n = g.nodeCount();
+        Integer[] order = new Integer[n];
+        for (int v = 0; v < n; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(g.degree(b), g.degree(a)));
+
+        boolean[] covered = new boolean[n];
+        int[] chosen = new int[Math.min(count, n)];
+        int k = 0;
+        for (int i = 0; i < n && k < chosen.length && g.degree(order[i]) > 0; i++) {
+            int v = order[i];
+            if (!covered[v]) {
+                chosen[k++] = v;
+                g.forEachNeighbor(v, (w, wgt) -> {
+                    covered[w] = true;
+                    return true;
+                });
+            }
+        }
+        return Arrays.copyOf(chosen, k);
+    }
+
+
+    // Distinct vertices with at least one edge, chosen at random
+    private static int[] atRandom(Graph g, int count, long seed) {
+        int n = g.nodeCount();
+        int[] candidates = new int[n];
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            if (g.degree(v) > 0) {
+                candidates[m++] = v;
+            }
+        }
+        // Partial Fisher-Yates shuffle
+        Random random = new Random(seed);
+        int k = Math.min(count, m);
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(m - i);
+            int swap = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = swap;
+        }
+        return Arrays.copyOf(candidates, k);
+    }
+
+
+    /**
+     * @return the landmark vertices
+     */
+    int[] landmarks() {
+        return landmarks.clone();
+    }
+
+
+    /**
+     * An upper bound on the distance between two vertices, the length of
+     * the shortest path through a landmark
+     *
+     * @param u one vertex
+     * @param v the other vertex
+     * @return the bound; Integer.MAX_VALUE if a landmark reaches one of
+     *         the vertices but not the other, which puts them in different
+     *         components; UNKNOWN if no landmark reaches either
+     */
+    int upperBound(int u, int v) {
+        if (u == v) {
+            return 0;
+        }
+        if (u >= n || v >= n) {
+            return UNREACHABLE;
+        }
+        int k = landmarks.length;
+        int best = UNREACHABLE;
+        for (int i = 0, a = u * k, b = v * k; i < k; i++, a++, b++) {
+            int du = distances[a];
+            int dv = distances[b];
+            if (du != UNREACHABLE && dv != UNREACHABLE) {
+                best = Math.min(best, du + dv);
+            } else if (du != dv) {
+                // One of them is in the landmark's component and the other
+                // is not, so there is no path at all
+                return UNREACHABLE;
+            }
+        }
+        // Unreached by every landmark, both lie outside the landmarks'
+        // components, together or apart
+        return best == UNREACHABLE ? UNKNOWN : best;
+    }
+
+
+    /**
+     * @param v a vertex
+     * @return true iff some landmark reaches the vertex, so that its upper
+     *         bound to any other vertex is known
+     */
+    boolean reaches(int v) {
+        if (v >= n) {
+            return false;
+        }
+        int k = landmarks.length;
+        for (int a = v * k, end = a + k; a < end; a++) {
+            if (distances[a] != UNREACHABLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * A lower bound on the distance between two vertices
+     *
+     * @param u one vertex
+     * @param v the other vertex
+     * @return the bound, or Integer.MAX_VALUE if the vertices are known to
+     *         be in different components
+     */
+    int lowerBound(int u, int v) {
+        if (u == v) {
+            return 0;
+        }
+        if (u >= n || v >= n) {
+            return UNREACHABLE;
+        }
+        int k = landmarks.length;
+        int best = 1;
+        for (int i = 0, a = u * k, b = v * k; i < k; i++, a++, b++) {
+            int du = distances[a];
+            int dv = distances[b];
+            if (du != UNREACHABLE && dv != UNREACHABLE) {
+                best = Math.max(best, Math.abs(du - dv));
+            } else if (du != dv) {
+                return UNREACHABLE;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,284 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The recent likes of several users, merged newest first.
+ *
+ * Every user's likes are already sorted most recent first, so instead of
+ * collecting all of them and sorting, the merge keeps one cursor per user
+ * in a binary heap ordered by the time of the like under the cursor. Each
+ * step takes the newest like on top of the heap and advances that cursor,
+ * costing O(log k) for k users. The likes of a user inside the time window
+ * are found by binary search before the merge, so a user with a long
+ * history costs O(log n) to place. Once enough posts have been listed, the
+ * rest of the merge only adds likers to them, so no map entry or list is
+ * created for a post that is not returned.
+ *
+ * A merge reads one source: the lists built by postByUser(), the columns
+ * of a LikeStore or the Rows of LiveLikes. An instance is used once.
+ */
+abstract class LikeMerge {
+
+    // Users in the heap, the one with the newest next like on top
+    private final int[] heap;
+    private int         size;
+
+    // The next like and the end of the likes of every user, as indexes into
+    // the user's list or positions in the store
+    final int[]         next;
+    final int[]         end;
+
+
+    private LikeMerge(int users) {
+        heap = new int[users];
+        next = new int[users];
+        end = new int[users];
+    }
+
+
+    /**
+     * Merge likes held as lists
+     *
+     * @param likes    the likes of each user, most recent first; null for a
+     *                 user without likes
+     * @param earliest only likes after this time are merged
+     * @return the merge
+     */
+    static LikeMerge of(List<List<LikedPost>> likes, Instant earliest) {
+        LikeMerge merge = new LikeMerge(likes.size()) {
+            @Override
+            boolean newer(int a, int b) {
+                return likes.get(a).get(next[a]).getTimestamp()
+                        .isAfter(likes.get(b).get(next[b]).getTimestamp());
+            }
+
+
+            @Override
+            int post(int user) {
+                return likes.get(user).get(next[user]).getPostId();
+            }
+
+
+            @Override
+            int liker(int user) {
+                return likes.get(user).get(next[user]).getUserId();
+            }
+        };
+        for (int user = 0; user < likes.size(); user++) {
+            List<LikedPost> list = likes.get(user);
+            merge.add(user, 0, list == null ? 0 : after(list, earliest));
+        }
+        return merge;
+    }
+
+
+    // The number of likes given after a time in a list sorted most recent
+    // first: they lead the list, so binary search for the first one not
+    // after it when the list has random access, as postByUser() lists do
+    static int after(List<LikedPost> likes, Instant earliest) {
+        if (!(likes instanceof RandomAccess)) {
+            int count = 0;
+            for (LikedPost like : likes) {
+                if (!like.getTimestamp().isAfter(earliest)) {
+                    break;
+                }
+                count++;
+            }
+            return count;
+        }
+        int low = 0;
+        int high = likes.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (likes.get(mid).getTimestamp().isAfter(earliest)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Merge likes held in a store
+     *
+     * @param store   the likes
+     * @param userIds the users whose likes to merge
+     * @param from    the start of the window in epoch milliseconds, inclusive
+     * @param to      the end of the window in epoch milliseconds, exclusive
+     * @return the merge
+     */
+    static LikeMerge of(LikeStore store, int[] userIds, long from, long to) {
+        LikeMerge merge = new LikeMerge(userIds.length) {
+            @Override
+            boolean newer(int a, int b) {
+                return store.timeAt(next[a]) > store.timeAt(next[b]);
+            }
+
+
+            @Override
+            int post(int user) {
+                return store.postAt(next[user]);
+            }
+
+
+            @Override
+            int liker(int user) {
+                return userIds[user];
+            }
+        };
+        for (int user = 0; user < userIds.length; user++) {
+            int first = store.firstBefore(userIds[user], to);
+            merge.add(user, first, store.firstBefore(userIds[user], from));
+        }
+        return merge;
+    }
+
+
+    /**
+     * Merge the likes held by a live index, as they are when the merge is
+     * created
+     *
+     * @param live    the likes
+     * @param userIds the users whose likes to merge
+     * @param from    the start of the window in epoch milliseconds, inclusive
+     * @param to      the end of the window in epoch milliseconds, exclusive
+     * @return the merge
+     */
+    static LikeMerge of(LiveLikes live, int[] userIds, long from, long to) {
+        // Take every user's Row once; appends made during the merge publish
+        // new Rows and leave these alone
+        LiveLikes.Row[] rows = new LiveLikes.Row[userIds.length];
+        for (int user = 0; user < userIds.length; user++) {
+            rows[user] = live.userRow(userIds[user]);
+        }
+        LikeMerge merge = new LikeMerge(userIds.length) {
+            @Override
+            boolean newer(int a, int b) {
+                return rows[a].times[next[a]] > rows[b].times[next[b]];
+            }
+
+
+            @Override
+            int post(int user) {
+                return rows[user].ids[next[user]];
+            }
+
+
+            @Override
+            int liker(int user) {
+                return userIds[user];
+            }
+        };
+        for (int user = 0; user < userIds.length; user++) {
+            merge.add(user, rows[user].firstBefore(to), rows[user].firstBefore(from));
+        }
+        return merge;
+    }
+
+
+    // True iff the next like of user a is newer than that of user b
+    abstract boolean newer(int a, int b);
+
+
+    // The post and the liker of the next like of the user
+    abstract int post(int user);
+
+
+    abstract int liker(int user);
+
+
+    // Put a user in the heap if it has likes in the window
+    private void add(int user, int first, int last) {
+        next[user] = first;
+        end[user] = last;
+        if (first < last) {
+            heap[size] = user;
+            siftUp(size++);
+        }
+    }
+
+
+    /**
+     * Lists the posts liked, by the time of their most recent like, newest
+     * first, each with the users who liked it, most recent first.
+     *
+     * With a limit, the listed posts and their likers are exactly the
+     * first posts of the full result and their likers: the merge goes on
+     * past the last listed post, skipping the likes of the others.
+     *
+     * @param limit the most posts to list
+     * @return the posts in order, each mapped to its likers
+     */
+    Map<Integer, List<Integer>> posts(int limit) {
+        Map<Integer, List<Integer>> res = new LinkedHashMap<>();
+        while (size > 0) {
+            int user = heap[0];
+            int post = post(user);
+            List<Integer> likers = res.get(post);
+            if (likers == null && res.size() < limit) {
+                likers = new ArrayList<>();
+                res.put(post, likers);
+            }
+            if (likers != null) {
+                likers.add(liker(user));
+            }
+
+            // Move the user's cursor, dropping the user once out of likes
+            if (++next[user] == end[user]) {
+                heap[0] = heap[--size];
+            }
+            siftDown(0);
+        }
+        return res;
+    }
+
+
+    // True iff user a comes out of the heap before user b; between equal
+    // times the earlier user goes first
+    private boolean first(int a, int b) {
+        return newer(a, b) || (a < b && !newer(b, a));
+    }
+
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!first(heap[i], heap[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && first(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!first(heap[child], heap[i])) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+
+    private void swap(int i, int j) {
+        int user = heap[i];
+        heap[i] = heap[j];
+        heap[j] = user;
+    }
+}
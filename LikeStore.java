@@ -0,0 +1,474 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every like of every post, in columns of primitives instead of one
+ * LikedPost and one Instant per like.
+ *
+ * Likes are grouped by the user who gave them. The likes of user u sit at
+ * positions firstLike(u) .. endLike(u) - 1, most recent first, and for
+ * each position the store keeps the post (an int) and the time in epoch
+ * milliseconds (a long): 12 bytes per like, against 60 or more for a
+ * LikedPost with its Instant in two maps of lists.
+ *
+ * The view from posts to likers is built on first use as one int per like,
+ * the position of the like in the user columns, grouped by post. Both
+ * views share the same columns, so nothing is duplicated.
+ *
+ * As the likes of a user are sorted by time, the likes in a time window
+ * are a contiguous run of positions, found by two binary searches.
+ *
+ * The store is built with one counting pass over the users followed by a
+ * sort of each user's likes, and is immutable afterwards.
+ */
+public class LikeStore {
+
+    private final int[]   userOffsets;
+    private final int[]   posts;
+    private final long[]  times;
+    private final BitSet  postIds;
+    private final int     malformed;
+
+    // Post view, built by postIndex(): the positions of the likes of post
+    // p are postLikes[postOffsets[p]] .. postLikes[postOffsets[p + 1] - 1]
+    private volatile int[] postOffsets;
+    private volatile int[] postLikes;
+
+
+    private LikeStore(int[] userOffsets, int[] posts, long[] times, BitSet postIds,
+            int malformed) {
+        this.userOffsets = userOffsets;
+        this.posts = posts;
+        this.times = times;
+        this.postIds = postIds;
+        this.malformed = malformed;
+    }
+
+
+    /**
+     * Parse a likes file of lines such as
+     *
+     *   42=[7 & 2023-01-31T12:00:00Z, 9 & 2023-02-01T08:30:00Z]
+     *
+     * where each like is a user ID and the time it was given. Lines that
+     * cannot be parsed are skipped and counted.
+     *
+     * @param path the file
+     * @return the store
+     * @throws IOException if the file cannot be read
+     */
+    public static LikeStore read(Path path) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.parseLine(line);
+            }
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Build a store from the map returned by loadPosts()
+     *
+     * @param likedPosts every post mapped to its likes
+     * @return the store
+     */
+    public static LikeStore of(Map<Integer, List<LikedPost>> likedPosts) {
+        Builder builder = new Builder();
+        for (Map.Entry<Integer, List<LikedPost>> post : likedPosts.entrySet()) {
+            builder.post(post.getKey());
+            for (LikedPost like : post.getValue()) {
+                builder.add(like.getPostId(), like.getUserId(),
+                        like.getTimestamp().toEpochMilli());
+            }
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * @return the number of likes
+     */
+    public int likeCount() {
+        return posts.length;
+    }
+
+
+    /**
+     * @return one more than the largest user ID with a like
+     */
+    public int userBound() {
+        return userOffsets.length - 1;
+    }
+
+
+    /**
+     * @return the number of lines skipped by read() because they could not
+     *         be parsed
+     */
+    public int malformedCount() {
+        return malformed;
+    }
+
+
+    /**
+     * @param userId a user
+     * @return the position of the user's most recent like
+     */
+    public int firstLike(int userId) {
+        return userId >= 0 && userId < userBound() ? userOffsets[userId] : 0;
+    }
+
+
+    /**
+     * @param userId a user
+     * @return one past the position of the user's oldest like
+     */
+    public int endLike(int userId) {
+        return userId >= 0 && userId < userBound() ? userOffsets[userId + 1] : 0;
+    }
+
+
+    /**
+     * The likes of a user given at or after a time t are the positions
+     * firstLike(u) .. firstBefore(u, t) - 1, and those given in [from, to)
+     * are firstBefore(u, to) .. firstBefore(u, from) - 1
+     *
+     * @param userId a user
+     * @param millis a time in epoch milliseconds
+     * @return the position of the user's most recent like given before the
+     *         time, or endLike(userId) if there is none
+     */
+    public int firstBefore(int userId, long millis) {
+        // Times fall along the user's range; find the first one below millis
+        int low = firstLike(userId);
+        int high = endLike(userId);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] >= millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * @param position the position of a like
+     * @return the post liked
+     */
+    public int postAt(int position) {
+        return posts[position];
+    }
+
+
+    /**
+     * @param position the position of a like
+     * @return the time of the like in epoch milliseconds
+     */
+    public long timeAt(int position) {
+        return times[position];
+    }
+
+
+    /**
+     * @param position the position of a like
+     * @return the user who gave the like
+     */
+    public int userAt(int position) {
+        // The user whose range holds the position; empty ranges repeat an
+        // offset, so take the last user starting at or before it
+        int low = 0;
+        int high = userBound() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (userOffsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * @param postId a post
+     * @return true iff the post was in the file, liked or not
+     */
+    public boolean hasPost(int postId) {
+        return postId >= 0 && postIds.get(postId);
+    }
+
+
+    /**
+     * @param postId a post
+     * @return the number of likes of the post
+     */
+    public int likerCount(int postId) {
+        int[] offsets = postIndex();
+        return postId >= 0 && postId < offsets.length - 1
+                ? offsets[postId + 1] - offsets[postId] : 0;
+    }
+
+
+    /**
+     * @param postId a post
+     * @param i      the index of the like, below likerCount(postId)
+     * @return the position of the i-th like of the post; the likes of a
+     *         post are listed by increasing user ID
+     */
+    public int likeOfPost(int postId, int i) {
+        int[] offsets = postIndex();
+        return postLikes[offsets[postId] + i];
+    }
+
+
+    // Build the post view on first use
+    private int[] postIndex() {
+        int[] offsets = postOffsets;
+        if (offsets == null) {
+            synchronized (this) {
+                offsets = postOffsets;
+                if (offsets == null) {
+                    offsets = new int[postIds.length() + 1];
+                    for (int post : posts) {
+                        offsets[post + 1]++;
+                    }
+                    for (int p = 0; p < offsets.length - 1; p++) {
+                        offsets[p + 1] += offsets[p];
+                    }
+                    int[] likes = new int[posts.length];
+                    int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+                    for (int i = 0; i < posts.length; i++) {
+                        likes[next[posts[i]]++] = i;
+                    }
+                    postLikes = likes;
+                    postOffsets = offsets;
+                }
+            }
+        }
+        return offsets;
+    }
+
+
+    /**
+     * The likes of a user as LikedPost objects, created as they are read;
+     * the same list postByUser() builds, without storing the objects
+     *
+     * @param userId a user
+     * @return the likes, most recent first
+     */
+    public List<LikedPost> likesOf(int userId) {
+        return view(userId, firstLike(userId), endLike(userId));
+    }
+
+
+    /**
+     * The likes of a user given in a time window, created as they are read
+     *
+     * @param userId a user
+     * @param from   the start of the window in epoch milliseconds, inclusive
+     * @param to     the end of the window in epoch milliseconds, exclusive
+     * @return the likes, most recent first
+     */
+    public List<LikedPost> likesOf(int userId, long from, long to) {
+        int first = firstBefore(userId, to);
+        return view(userId, first, Math.max(first, firstBefore(userId, from)));
+    }
+
+
+    // The likes at positions first .. end - 1, all given by userId
+    private List<LikedPost> view(int userId, int first, int end) {
+        return new AbstractList<LikedPost>() {
+            @Override
+            public LikedPost get(int index) {
+                if (index < 0 || index >= end - first) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                int position = first + index;
+                return new LikedPost(posts[position], userId,
+                        Instant.ofEpochMilli(times[position]));
+            }
+
+
+            @Override
+            public int size() {
+                return end - first;
+            }
+        };
+    }
+
+
+    // Collects likes in arrival order, then groups and sorts them
+    private static final class Builder {
+        private int[]  likePosts = new int[1024];
+        private int[]  likeUsers = new int[1024];
+        private long[] likeTimes = new long[1024];
+        private int    count;
+        private int    maxUser = -1;
+        private BitSet postIds = new BitSet();
+        private int    malformed;
+
+
+        void post(int postId) {
+            postIds.set(postId);
+        }
+
+
+        void add(int postId, int userId, long millis) {
+            if (count == likePosts.length) {
+                likePosts = Arrays.copyOf(likePosts, 2 * count);
+                likeUsers = Arrays.copyOf(likeUsers, 2 * count);
+                likeTimes = Arrays.copyOf(likeTimes, 2 * count);
+            }
+            likePosts[count] = postId;
+            likeUsers[count] = userId;
+            likeTimes[count] = millis;
+            count++;
+            maxUser = Math.max(maxUser, userId);
+        }
+
+
+        // Parse "post=[user & time, user & time, ...]"; a bad line adds
+        // nothing
+        void parseLine(String line) {
+            int mark = count;
+            try {
+                int equal = line.indexOf('=');
+                int postId = Integer.parseInt(line.substring(0, equal).trim());
+                if (postId < 0) {
+                    throw new NumberFormatException(line);
+                }
+                int open = line.indexOf('[', equal);
+                int close = line.lastIndexOf(']');
+                int start = open < 0 ? equal + 1 : open + 1;
+                int end = close < start ? line.length() : close;
+                while (start < end) {
+                    int comma = line.indexOf(',', start);
+                    if (comma < 0 || comma > end) {
+                        comma = end;
+                    }
+                    int amp = line.indexOf('&', start);
+                    if (amp < 0 || amp > comma) {
+                        if (line.substring(start, comma).trim().isEmpty()) {
+                            start = comma + 1;
+                            continue;
+                        }
+                        throw new NumberFormatException(line);
+                    }
+                    int userId = Integer.parseInt(line.substring(start, amp).trim());
+                    if (userId < 0) {
+                        throw new NumberFormatException(line);
+                    }
+                    long millis = Instant.parse(line.substring(amp + 1, comma).trim())
+                            .toEpochMilli();
+                    add(postId, userId, millis);
+                    start = comma + 1;
+                }
+                post(postId);
+            } catch (RuntimeException e) {
+                // NumberFormatException, DateTimeParseException or a
+                // missing '=': drop whatever the line added
+                count = mark;
+                if (!line.trim().isEmpty()) {
+                    malformed++;
+                }
+            }
+        }
+
+
+        LikeStore build() {
+            // Count the likes of every user and turn the counts into offsets
+            int users = maxUser + 1;
+            int[] offsets = new int[users + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[likeUsers[i] + 1]++;
+            }
+            for (int u = 0; u < users; u++) {
+                offsets[u + 1] += offsets[u];
+            }
+
+            // Scatter the likes to their user's range
+            int[] posts = new int[count];
+            long[] times = new long[count];
+            int[] next = Arrays.copyOf(offsets, users);
+            for (int i = 0; i < count; i++) {
+                int at = next[likeUsers[i]]++;
+                posts[at] = likePosts[i];
+                times[at] = likeTimes[i];
+            }
+            likePosts = null;
+            likeUsers = null;
+            likeTimes = null;
+
+            // Most recent first within every user
+            for (int u = 0; u < users; u++) {
+                sortDescending(posts, times, offsets[u], offsets[u + 1]);
+            }
+            return new LikeStore(offsets, posts, times, postIds, malformed);
+        }
+    }
+
+
+    // Heap sort of times[from, to) with posts alongside, latest time first
+    // and the lower post first among equal times
+    static void sortDescending(int[] posts, long[] times, int from, int to) {
+        int n = to - from;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(posts, times, from, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(posts, times, from, from + end);
+            siftDown(posts, times, from, 0, end);
+        }
+    }
+
+
+    // Sift within a min-heap on (time, -post), which heap sort turns into
+    // descending order
+    private static void siftDown(int[] posts, long[] times, int base, int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && sortsAfter(posts, times, base + child + 1, base + child)) {
+                child++;
+            }
+            if (!sortsAfter(posts, times, base + child, base + i)) {
+                return;
+            }
+            swap(posts, times, base + i, base + child);
+            i = child;
+        }
+    }
+
+
+    // True iff the like at a belongs after the like at b in the final order
+    private static boolean sortsAfter(int[] posts, long[] times, int a, int b) {
+        return times[a] < times[b] || (times[a] == times[b] && posts[a] > posts[b]);
+    }
+
+
+    private static void swap(int[] posts, long[] times, int a, int b) {
+        int post = posts[a];
+        posts[a] = posts[b];
+        posts[b] = post;
+        long time = times[a];
+        times[a] = times[b];
+        times[b] = time;
+    }
+}
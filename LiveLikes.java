@@ -0,0 +1,314 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Likes as they arrive, indexed both by user and by post, for feeds that
+ * must see a like as soon as it is given.
+ *
+ * Each user's recent likes and each post's recent likers are an immutable
+ * Row, most recent first. Appending a like builds new Rows for its user
+ * and its post and publishes them with one store each into a concurrent
+ * map (copy on write, as in GraphConcurrent), so readers never lock and
+ * always see a complete Row, either the old one or the new one. Appends
+ * are serialized by one lock; a single ingestion thread is the expected
+ * use.
+ *
+ * Memory is bounded twice over: a Row keeps at most a fixed number of
+ * entries, dropping the oldest, and entries older than the retention
+ * period, measured back from the current time of a clock, are dropped
+ * when their Row is next written or when expire() sweeps every Row. The
+ * Rows are keyed by ID rather than indexed by it, so the index holds only
+ * the users and posts with recent likes: ever increasing post IDs and
+ * large, sparse user IDs cost no more than small ones, and expire()
+ * removes the Rows it empties. A Row never holds more than its capacity,
+ * so an append costs O(capacity).
+ *
+ * The clock, not the likes, decides what is recent, so one badly dated
+ * like cannot age out the others. A like dated before the retention
+ * period or more than a few minutes ahead of the clock is not stored, and
+ * is counted by droppedCount().
+ */
+public class LiveLikes {
+
+    private static final Row EMPTY = new Row(new int[0], new long[0]);
+
+    // How far ahead of the clock a like may be dated, for clock skew
+    // between the source of the likes and this machine
+    private static final long MAX_AHEAD = Duration.ofMinutes(5).toMillis();
+
+    private final int  userCapacity;
+    private final int  postCapacity;
+    private final long retention;
+    private final Clock clock;
+
+    // The Rows of the users and posts with recent likes; written under the
+    // lock, read without it
+    private final Map<Integer, Row> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Row> posts = new ConcurrentHashMap<>();
+
+    private volatile long appended;
+    private volatile long dropped;
+
+
+    /**
+     * Keep the likes of the last retention period by the system clock
+     *
+     * @param userCapacity the most likes kept per user
+     * @param postCapacity the most likers kept per post
+     * @param retention    how long a like is kept
+     */
+    public LiveLikes(int userCapacity, int postCapacity, Duration retention) {
+        this(userCapacity, postCapacity, retention, Clock.systemUTC());
+    }
+
+
+    /**
+     * @param userCapacity the most likes kept per user
+     * @param postCapacity the most likers kept per post
+     * @param retention    how long a like is kept, measured back from the
+     *                     clock's current time
+     * @param clock        the clock; a replay of old likes passes one set
+     *                     to the time being replayed
+     */
+    public LiveLikes(int userCapacity, int postCapacity, Duration retention, Clock clock) {
+        if (userCapacity < 1 || postCapacity < 1 || retention.isNegative()) {
+            throw new IllegalArgumentException("capacities must be positive and retention not negative");
+        }
+        this.userCapacity = userCapacity;
+        this.postCapacity = postCapacity;
+        this.retention = retention.toMillis();
+        this.clock = clock;
+    }
+
+
+    /**
+     * Record a like
+     *
+     * @param like the like
+     */
+    public void append(LikedPost like) {
+        append(like.getPostId(), like.getUserId(), like.getTimestamp().toEpochMilli());
+    }
+
+
+    /**
+     * Record a like
+     *
+     * @param postId the post liked
+     * @param userId the user who liked it
+     * @param millis the time of the like in epoch milliseconds
+     */
+    public synchronized void append(int postId, int userId, long millis) {
+        if (postId < 0 || userId < 0) {
+            throw new IllegalArgumentException("negative ID: post " + postId + ", user " + userId);
+        }
+        long now = clock.millis();
+        long horizon = now - retention;
+        if (millis < horizon || millis - now > MAX_AHEAD) {
+            dropped++;
+            return;
+        }
+        users.put(userId, row(users.get(userId)).with(postId, millis, userCapacity, horizon));
+        posts.put(postId, row(posts.get(postId)).with(userId, millis, postCapacity, horizon));
+        appended++;
+    }
+
+
+    /**
+     * Record every like waiting in a queue, without blocking
+     *
+     * @param queue the likes, for example filled by a thread tailing a file
+     * @return the number of likes taken from the queue
+     */
+    public int drain(BlockingQueue<LikedPost> queue) {
+        int count = 0;
+        for (LikedPost like; (like = queue.poll()) != null; count++) {
+            append(like);
+        }
+        return count;
+    }
+
+
+    /**
+     * Record the likes of a queue as they arrive, until the thread is
+     * interrupted
+     *
+     * @param queue the likes
+     */
+    public void consume(BlockingQueue<LikedPost> queue) {
+        try {
+            while (true) {
+                append(queue.take());
+                drain(queue);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Drop every like older than the retention period, so users and posts
+     * that stopped receiving likes release their entries
+     */
+    public synchronized void expire() {
+        long horizon = clock.millis() - retention;
+        expire(users, horizon);
+        expire(posts, horizon);
+    }
+
+
+    private static void expire(Map<Integer, Row> rows, long horizon) {
+        for (Iterator<Map.Entry<Integer, Row>> it = rows.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, Row> entry = it.next();
+            Row kept = entry.getValue().since(horizon);
+            if (kept.size() == 0) {
+                it.remove();
+            } else if (kept != entry.getValue()) {
+                entry.setValue(kept);
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of likes stored by append()
+     */
+    public long appendedCount() {
+        return appended;
+    }
+
+
+    /**
+     * @return the number of likes append() did not store because they were
+     *         dated before the retention period or ahead of the clock
+     */
+    public long droppedCount() {
+        return dropped;
+    }
+
+
+    /**
+     * @return the number of users and posts holding recent likes
+     */
+    public int rowCount() {
+        return users.size() + posts.size();
+    }
+
+
+    /**
+     * @param userId a user
+     * @return the user's recent likes, most recent first, as they were
+     *         when the call was made
+     */
+    public List<LikedPost> likesOf(int userId) {
+        Row row = userRow(userId);
+        return new AbstractList<LikedPost>() {
+            @Override
+            public LikedPost get(int index) {
+                return new LikedPost(row.ids[index], userId, Instant.ofEpochMilli(row.times[index]));
+            }
+
+
+            @Override
+            public int size() {
+                return row.size();
+            }
+        };
+    }
+
+
+    /**
+     * @param postId a post
+     * @return the users who recently liked the post, most recent first
+     */
+    public int[] likersOf(int postId) {
+        return row(posts.get(postId)).ids.clone();
+    }
+
+
+    // The current Row of a user, never null
+    Row userRow(int userId) {
+        return row(users.get(userId));
+    }
+
+
+    private static Row row(Row row) {
+        return row == null ? EMPTY : row;
+    }
+
+
+    /**
+     * The recent entries of one user or post, most recent first; never
+     * changed once published
+     */
+    static final class Row {
+        final int[]  ids;
+        final long[] times;
+
+
+        Row(int[] ids, long[] times) {
+            this.ids = ids;
+            this.times = times;
+        }
+
+
+        int size() {
+            return ids.length;
+        }
+
+
+        // The position of the first entry before the time
+        int firstBefore(long millis) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] >= millis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+
+        // A copy with the entry inserted in time order, keeping at most
+        // capacity entries and none before the horizon
+        Row with(int id, long millis, int capacity, long horizon) {
+            int at = firstBefore(millis);
+            int end = firstBefore(horizon);
+            int size = Math.min(end + 1, capacity);
+            if (at >= size) {
+                // Older than every entry of a full row
+                return this;
+            }
+            int[] newIds = new int[size];
+            long[] newTimes = new long[size];
+            System.arraycopy(ids, 0, newIds, 0, at);
+            System.arraycopy(times, 0, newTimes, 0, at);
+            newIds[at] = id;
+            newTimes[at] = millis;
+            System.arraycopy(ids, at, newIds, at + 1, size - at - 1);
+            System.arraycopy(times, at, newTimes, at + 1, size - at - 1);
+            return new Row(newIds, newTimes);
+        }
+
+
+        // The entries at or after the horizon
+        Row since(long horizon) {
+            int end = firstBefore(horizon);
+            return end == times.length ? this
+                    : new Row(Arrays.copyOf(ids, end), Arrays.copyOf(times, end));
+        }
+    }
+}
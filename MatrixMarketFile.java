@@ -0,0 +1,413 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads a weighted edge list in the Matrix Market style used by the socfb
+ * datasets: '%' comment lines, a header line holding the node and edge
+ * counts (or rows, columns and entries), then one "from to weight" line per
+ * undirected edge.
+ * 
+ * The file is memory-mapped and the numbers are parsed straight from the
+ * mapped bytes, so no String or Scanner token is created per line. Every
+ * line becomes two directed edges in an EdgeList, with the weight stored
+ * as an int in hundredths, which is how SocialNetwork has always stored
+ * it. Lines whose target is vertex 0 are skipped.
+ * 
+ * Given a pool, the data lines are cut into newline-aligned chunks that
+ * are parsed concurrently, each into its own EdgeList; the lists keep the
+ * order of the file, so GraphCSR can sort them in parallel as well. Both
+ * readers stop after the edge count given in the header: data lines past
+ * it are ignored, as the original Scanner loader ignored them.
+ */
+public class MatrixMarketFile {
+
+    // Largest region of the file mapped at once
+    private static final long WINDOW = 1L << 28;
+
+    // Smallest chunk handed to one parsing task
+    private static final long MIN_CHUNK = 1L << 22;
+
+    // Powers of ten that are exact doubles
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final int        nodeCount;
+    private final int        edgeCount;
+    private final EdgeList[] parts;
+
+
+    private MatrixMarketFile(int nodeCount, int edgeCount, EdgeList[] parts) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.parts = parts;
+    }
+
+
+    /**
+     * Read a whole file on the calling thread
+     * 
+     * @param path the file to read
+     * @return the header counts and the edges of the file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    static MatrixMarketFile load(String path) throws IOException {
+        return load(path, null);
+    }
+
+
+    /**
+     * Read a whole file
+     * 
+     * @param path the file to read
+     * @param pool the pool parsing the chunks, or null to read sequentially
+     * @return the header counts and the edges of the file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    static MatrixMarketFile load(String path, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            LineCursor lines = new LineCursor(channel, 0, size);
+            if (!lines.nextLine()) {
+                throw new IOException(path + " has no header line");
+            }
+            long[] header = new long[3];
+            int values = 0;
+            while (values < header.length && lines.hasToken()) {
+                header[values++] = lines.nextInt();
+            }
+            if (values < 2) {
+                throw new IOException(path + " has a malformed header line");
+            }
+            int nodeCount = (int) (values == 3 ? Math.max(header[0], header[1]) : header[0]);
+            int edgeCount = (int) header[values - 1];
+
+            if (pool == null) {
+                EdgeList edges = new EdgeList(capacity(edgeCount, size - lines.offset()));
+                for (int i = 0; i < edgeCount && lines.nextLine(); i++) {
+                    addLine(lines, edges);
+                }
+                return new MatrixMarketFile(nodeCount, edgeCount, new EdgeList[] {edges});
+            }
+
+            long[] bounds = chunks(channel, Math.min(lines.offset(), size), size,
+                    pool.getParallelism());
+            EdgeList[] parts = new EdgeList[bounds.length - 1];
+            int[] lineCounts = new int[parts.length];
+            IOException[] failure = new IOException[1];
+            GraphCSR.parallelFor(pool, parts.length, c -> {
+                long bytes = bounds[c + 1] - bounds[c];
+                EdgeList edges = new EdgeList((int) Math.min(bytes / 6, Integer.MAX_VALUE - 8));
+                try {
+                    LineCursor chunk = new LineCursor(channel, bounds[c], bounds[c + 1]);
+                    while (chunk.nextLine()) {
+                        addLine(chunk, edges);
+                        lineCounts[c]++;
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+                parts[c] = edges;
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+
+            // Drop the lines past the header's edge count: reparse the chunk
+            // holding the last counted line up to it, and drop later chunks
+            EdgeList[] read = parts;
+            long seen = 0;
+            for (int c = 0; c < read.length; c++) {
+                if (seen + lineCounts[c] > edgeCount) {
+                    EdgeList edges = new EdgeList(capacity(edgeCount - seen, bounds[c + 1] - bounds[c]));
+                    LineCursor chunk = new LineCursor(channel, bounds[c], bounds[c + 1]);
+                    for (long i = seen; i < edgeCount && chunk.nextLine(); i++) {
+                        addLine(chunk, edges);
+                    }
+                    read[c] = edges;
+                    read = Arrays.copyOf(read, c + 1);
+                    break;
+                }
+                seen += lineCounts[c];
+            }
+            return new MatrixMarketFile(nodeCount, edgeCount, read);
+        }
+    }
+
+
+    // Cut [start, end) into about four chunks per thread, each ending just
+    // after a newline; returns the chunk boundaries
+    private static long[] chunks(FileChannel channel, long start, long end,
+            int parallelism) throws IOException {
+        long target = Math.max(MIN_CHUNK, (end - start) / (4L * parallelism) + 1);
+        long[] bounds = new long[(int) ((end - start) / target) + 2];
+        int count = 0;
+        bounds[count++] = start;
+        long pos = start + target;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (pos < end) {
+            // Advance to the byte after the next newline
+            long lineStart = -1;
+            while (lineStart < 0 && pos < end) {
+                probe.clear();
+                int read = channel.read(probe, pos);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        lineStart = pos + i + 1;
+                        break;
+                    }
+                }
+                pos += read;
+            }
+            if (lineStart < 0 || lineStart >= end) {
+                break;
+            }
+            bounds[count++] = lineStart;
+            pos = lineStart + target;
+        }
+        bounds[count++] = end;
+        return Arrays.copyOf(bounds, count);
+    }
+
+
+    // Parse the current line into the edge list
+    static void addLine(LineCursor lines, EdgeList edges) throws IOException {
+        int from = lines.nextInt();
+        int to = lines.nextInt();
+        if (to == 0) {
+            return;
+        }
+        double weight = lines.hasToken() ? lines.nextDouble() : 1.0;
+        edges.add(from, to, (int) (weight * 100));
+        edges.add(to, from, (int) (weight * 100));
+    }
+
+
+    // Room for the two directed edges of every data line, of which there
+    // are at most as many as the header says and as "1 2\n" lines fit in
+    // the bytes; computed as a long, so a header past 2^30 edges neither
+    // overflows nor reserves memory for lines the file does not hold
+    private static int capacity(long lines, long bytes) {
+        return (int) Math.min(2 * Math.min(lines, bytes / 4 + 1), EdgeList.MAX_CAPACITY);
+    }
+
+
+    /**
+     * @return the number of nodes given in the header
+     */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+
+    /**
+     * @return the number of edges given in the header
+     */
+    int edgeCount() {
+        return edgeCount;
+    }
+
+
+    /**
+     * @return the directed edges read from the file, as consecutive parts
+     */
+    EdgeList[] parts() {
+        return parts;
+    }
+
+
+    /**
+     * Walks the lines of a region of a file through a sliding memory-mapped
+     * window, skipping blank and comment lines. The region must start at
+     * the beginning of a line.
+     */
+    static class LineCursor {
+        private final FileChannel channel;
+        private final long        end;
+        private MappedByteBuffer  buf;
+        private long              base;
+        private int               next;
+        private int               pos;
+        private int               lineEnd;
+
+
+        LineCursor(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.end = end;
+            this.base = start;
+        }
+
+
+        // Map the window starting at the given file offset
+        private void map(long offset) throws IOException {
+            base = offset;
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(WINDOW, end - offset));
+            next = 0;
+        }
+
+
+        /**
+         * @return the file offset of the line after the current one
+         */
+        long offset() {
+            return base + next;
+        }
+
+
+        /**
+         * Move to the next line holding data
+         * 
+         * @return false at the end of the region
+         */
+        boolean nextLine() throws IOException {
+            while (true) {
+                if (buf == null || next >= buf.limit()) {
+                    if (base + next >= end) {
+                        return false;
+                    }
+                    map(base + next);
+                }
+                int limit = buf.limit();
+                int i = next;
+                while (i < limit && buf.get(i) != '\n') {
+                    i++;
+                }
+                if (i == limit && base + limit < end) {
+                    // The line runs past the window; remap from its start
+                    if (next == 0) {
+                        throw new IOException("Line too long at offset " + base);
+                    }
+                    map(base + next);
+                    continue;
+                }
+                pos = next;
+                lineEnd = i;
+                next = i + 1;
+                skipSpace();
+                if (pos < lineEnd && buf.get(pos) != '%') {
+                    return true;
+                }
+            }
+        }
+
+
+        private void skipSpace() {
+            while (pos < lineEnd) {
+                byte b = buf.get(pos);
+                if (b != ' ' && b != '\t' && b != '\r' && b != ',') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+
+        /**
+         * @return true if the current line has another token
+         */
+        boolean hasToken() {
+            skipSpace();
+            return pos < lineEnd;
+        }
+
+
+        /**
+         * @return the next token of the line parsed as a non-negative integer
+         */
+        int nextInt() throws IOException {
+            skipSpace();
+            int start = pos;
+            long value = 0;
+            while (pos < lineEnd) {
+                int digit = buf.get(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                pos++;
+            }
+            if (pos == start || value > Integer.MAX_VALUE) {
+                throw malformed();
+            }
+            return (int) value;
+        }
+
+
+        /**
+         * @return the next token of the line parsed as a double, rounded
+         *         exactly as Double.parseDouble() would
+         */
+        double nextDouble() throws IOException {
+            skipSpace();
+            int start = pos;
+            boolean negative = false;
+            if (pos < lineEnd && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+                negative = buf.get(pos) == '-';
+                pos++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean point = false;
+            boolean simple = true;
+            for (; pos < lineEnd; pos++) {
+                byte b = buf.get(pos);
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (point) {
+                        scale++;
+                    }
+                } else if (b == '.' && !point) {
+                    point = true;
+                } else if (b == ' ' || b == '\t' || b == '\r' || b == ',') {
+                    break;
+                } else {
+                    simple = false;
+                }
+            }
+            if (pos == start) {
+                throw malformed();
+            }
+            // An integer of at most 15 digits divided by an exact power of
+            // ten rounds once, the same as parsing the decimal string
+            if (simple && digits <= 15 && scale < POW10.length) {
+                double value = mantissa / POW10[scale];
+                return negative ? -value : value;
+            }
+            byte[] token = new byte[pos - start];
+            for (int i = 0; i < token.length; i++) {
+                token[i] = buf.get(start + i);
+            }
+            try {
+                return Double.parseDouble(new String(token, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw malformed();
+            }
+        }
+
+
+        private IOException malformed() {
+            return new IOException("Malformed line at offset " + (base + pos));
+        }
+    }
+}
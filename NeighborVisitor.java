@@ -0,0 +1,15 @@
+/**
+ * Callback handed to Graph.forEachNeighbor() so a traversal can look at the
+ * neighbors of a vertex without the graph allocating an array for them.
+ */
+@FunctionalInterface
+public interface NeighborVisitor {
+    /**
+     * Visit one neighbor
+     * 
+     * @param w   - the neighbor
+     * @param wgt - the weight of the edge to w
+     * @return true to continue with the next neighbor, false to stop
+     */
+    boolean visit(int w, int wgt);
+}
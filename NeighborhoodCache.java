@@ -0,0 +1,202 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of k-hop neighborhoods, the users found within some
+ * number of levels of a breadth-first search from one user.
+ *
+ * Each neighborhood is stored as an int[] in the order the search reached
+ * its users, keyed by (user, levels).
+ * The cache is bounded by the total number of user IDs it holds rather
+ * than by the number of entries, so a few huge neighborhoods cannot push
+ * its memory use past the budget; the least recently used entries are
+ * evicted first.
+ *
+ * A friendship change between u and v can only change a neighborhood that
+ * contains u or v: a new shortest path through the edge has to reach one
+ * of its ends first, and a lost one must have contained both. invalidate()
+ * drops exactly those entries, scanning the cached IDs, which the
+ * capacity bounds. Every invalidation also bumps a version, and
+ * put() refuses a result computed before the latest invalidation, so a
+ * search racing an update never caches a stale neighborhood.
+ *
+ * All methods are thread safe.
+ */
+public class NeighborhoodCache {
+
+    // Bookkeeping charged per entry on top of its user IDs, in ints
+    private static final int ENTRY_COST = 16;
+
+    private final long                       capacity;
+    private final LinkedHashMap<Long, int[]> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+
+    /**
+     * Create an empty cache
+     *
+     * @param capacity the most user IDs to hold across all entries
+     */
+    NeighborhoodCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+
+    // One key per (user, levels) pair
+    private static Long key(int userId, int levels) {
+        return ((long) userId << 32) | (levels & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Look up a neighborhood
+     *
+     * @param userId the user the search starts from
+     * @param levels the number of levels searched
+     * @return the users of the neighborhood in search order, or null on a
+     *         miss; the array must not be changed
+     */
+    synchronized int[] get(int userId, int levels) {
+        int[] users = entries.get(key(userId, levels));
+        if (users == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return users;
+    }
+
+
+    /**
+     * @return the current version, to be read before computing a
+     *         neighborhood that will be passed to put()
+     */
+    synchronized long version() {
+        return version;
+    }
+
+
+    /**
+     * Cache a neighborhood unless the graph changed since it was computed
+     *
+     * @param userId  the user the search started from
+     * @param levels  the number of levels searched
+     * @param users   the users of the neighborhood in search order
+     * @param version the version read before the search began
+     */
+    synchronized void put(int userId, int levels, int[] users, long version) {
+        long cost = users.length + ENTRY_COST;
+        if (version != this.version || cost > capacity) {
+            return;
+        }
+        int[] old = entries.put(key(userId, levels), users);
+        if (old != null) {
+            size -= old.length + ENTRY_COST;
+        }
+        size += cost;
+
+        // Evict from the least recently used end until back in budget
+        Iterator<int[]> eldest = entries.values().iterator();
+        while (size > capacity) {
+            size -= eldest.next().length + ENTRY_COST;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+
+    /**
+     * Drop every neighborhood that a change to the friendship between u and
+     * v may affect
+     *
+     * @param u one user
+     * @param v the other user
+     */
+    synchronized void invalidate(int u, int v) {
+        version++;
+        Iterator<Map.Entry<Long, int[]>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            int[] users = it.next().getValue();
+            if (contains(users, u) || contains(users, v)) {
+                size -= users.length + ENTRY_COST;
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+
+    /**
+     * Drop every entry, after the whole graph is replaced
+     */
+    synchronized void clear() {
+        version++;
+        entries.clear();
+        size = 0;
+    }
+
+
+    private static boolean contains(int[] users, int user) {
+        for (int u : users) {
+            if (u == user) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+
+    /**
+     * @return the number of lookups that had to search the graph
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+
+    /**
+     * @return the number of entries dropped to stay within the capacity
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+
+    /**
+     * @return the number of entries dropped because the graph changed
+     */
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+
+    /**
+     * @return the number of cached neighborhoods
+     */
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+
+    /**
+     * @return the number of user IDs held, including per entry bookkeeping
+     */
+    public synchronized long size() {
+        return size;
+    }
+}
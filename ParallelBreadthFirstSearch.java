@@ -0,0 +1,208 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Level-synchronous breadth-first search that expands each frontier in
+ * parallel on a ForkJoinPool.
+ * 
+ * The frontier is split into ranges handled by separate tasks. A vertex is
+ * claimed by setting its bit in a shared bitset with compare-and-set, so
+ * only one task records its distance and queues it. Each task collects the
+ * vertices it claims in a private buffer and copies them into the next
+ * frontier in one block. Levels smaller than the threshold run on the
+ * calling thread, because splitting them costs more than it saves.
+ * 
+ * The graph is only read, so any Graph implementation that is safe for
+ * concurrent readers can be searched. One instance may be shared between
+ * threads.
+ */
+public class ParallelBreadthFirstSearch {
+
+    static final int DEFAULT_THRESHOLD = 1024;
+
+    // Frontier vertices expanded by one leaf task
+    private static final int GRAIN = 256;
+
+    private final ForkJoinPool pool;
+    private final int          threshold;
+
+
+    /**
+     * Create a search running on the common pool with the default threshold
+     */
+    ParallelBreadthFirstSearch() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+
+    /**
+     * Create a search
+     * 
+     * @param pool      the pool running the expansion tasks
+     * @param threshold the smallest frontier expanded in parallel
+     */
+    ParallelBreadthFirstSearch(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = Math.max(threshold, 1);
+    }
+
+
+    /**
+     * Returns the distance from source to every vertex of the graph
+     * 
+     * @param g      the graph to search
+     * @param source the start vertex
+     * @return an array indexed by vertex holding its distance from source,
+     *         or Integer.MAX_VALUE for vertices that cannot be reached
+     */
+    public int[] distances(Graph g, int source) {
+        Search search = new Search(g, source);
+        search.run(Integer.MAX_VALUE, false);
+        return search.dist;
+    }
+
+
+    /**
+     * Returns every vertex within maxLevel edges of source, level by level
+     * and in increasing index order within a level
+     * 
+     * @param g        the graph to search
+     * @param source   the start vertex
+     * @param maxLevel the largest distance to visit
+     * @return the vertices reached, including the source
+     */
+    public int[] within(Graph g, int source, int maxLevel) {
+        Search search = new Search(g, source);
+        int count = search.run(maxLevel, true);
+        return Arrays.copyOf(search.order, count);
+    }
+
+
+    // The state of one search
+    private final class Search {
+        final Graph           g;
+        final int[]           dist;
+        final int[]           order;
+        final AtomicLongArray visited;
+        final AtomicInteger   tail = new AtomicInteger();
+        int                   level;
+
+
+        Search(Graph g, int source) {
+            int n = g.nodeCount();
+            this.g = g;
+            dist = new int[n];
+            order = new int[n];
+            visited = new AtomicLongArray((n + 63) >>> 6);
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            claim(source);
+            dist[source] = 0;
+            order[tail.getAndIncrement()] = source;
+        }
+
+
+        // Expand level after level; return the number of vertices reached
+        int run(int maxLevel, boolean sortLevels) {
+            int levelStart = 0;
+            int levelEnd = tail.get();
+            for (level = 0; level < maxLevel && levelStart < levelEnd; level++) {
+                if (levelEnd - levelStart < threshold) {
+                    new Expand(this, levelStart, levelEnd).expandRange();
+                } else {
+                    pool.invoke(new Expand(this, levelStart, levelEnd));
+                }
+                levelStart = levelEnd;
+                levelEnd = tail.get();
+                if (sortLevels) {
+                    sort(levelStart, levelEnd);
+                }
+            }
+            return levelEnd;
+        }
+
+
+        // Sort a level of the queue; a large one in parallel inside the
+        // pool, whose workers then run the sort's subtasks instead of the
+        // common pool's
+        private void sort(int from, int to) {
+            if (to - from < threshold) {
+                Arrays.sort(order, from, to);
+            } else {
+                pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(order, from, to)));
+            }
+        }
+
+
+        // Atomically mark v as visited; true if this call did it
+        boolean claim(int v) {
+            int word = v >>> 6;
+            long bit = 1L << v;
+            long old;
+            do {
+                old = visited.get(word);
+                if ((old & bit) != 0) {
+                    return false;
+                }
+            } while (!visited.compareAndSet(word, old, old | bit));
+            return true;
+        }
+    }
+
+
+    // Expands order[lo, hi) of the current frontier
+    private final class Expand extends RecursiveAction implements NeighborVisitor {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Search search;
+        private final int              lo;
+        private final int              hi;
+        private int[]                  found;
+        private int                    count;
+
+
+        Expand(Search search, int lo, int hi) {
+            this.search = search;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (hi - lo > GRAIN) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Expand(search, lo, mid), new Expand(search, mid, hi));
+            } else {
+                expandRange();
+            }
+        }
+
+
+        // Expand the whole range on the current thread
+        void expandRange() {
+            found = new int[Math.max(16, hi - lo)];
+            for (int i = lo; i < hi; i++) {
+                search.g.forEachNeighbor(search.order[i], this);
+            }
+            int at = search.tail.getAndAdd(count);
+            System.arraycopy(found, 0, search.order, at, count);
+        }
+
+
+        @Override
+        public boolean visit(int w, int wgt) {
+            if (search.claim(w)) {
+                search.dist[w] = search.level + 1;
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, 2 * count);
+                }
+                found[count++] = w;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Recommendations for every user in a range, computed across a pool.
+ *
+ * The users are handed out in chunks from a shared counter, so a worker
+ * that gets cheap users simply takes more chunks. Each worker owns its
+ * search scratch space and its output buffer for the whole run, so no
+ * per-user collections are created, and every result is passed to a Sink
+ * as soon as it is computed rather than collected into one big map.
+ *
+ * Users without friends are skipped, as loadGraphFromDataSet() does not
+ * count them as users.
+ */
+public class RecommendationBatch {
+
+    // Users handed to a worker at a time
+    private static final int CHUNK = 64;
+
+    /**
+     * Receives the recommendations of one user. Workers call it
+     * concurrently, so it must be thread safe.
+     */
+    public interface Sink {
+        /**
+         * @param userId the user
+         * @param users  the recommended users in users[0] .. users[count - 1];
+         *               the array is reused once the call returns
+         * @param count  the number of recommended users
+         */
+        void accept(int userId, int[] users, int count);
+    }
+
+    /**
+     * The outcome of one run
+     */
+    public static final class Report {
+        private final int  users;
+        private final long nanos;
+
+
+        Report(int users, long nanos) {
+            this.users = users;
+            this.nanos = nanos;
+        }
+
+
+        /**
+         * @return the number of users given recommendations
+         */
+        public int users() {
+            return users;
+        }
+
+
+        /**
+         * @return the wall clock time of the run, in nanoseconds
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+
+        /**
+         * @return the throughput of the run
+         */
+        public double usersPerSecond() {
+            return users * 1e9 / Math.max(nanos, 1);
+        }
+    }
+
+    // The work done for one user, with the worker's own scratch space
+    private interface Job {
+        int run(int userId, int[] out);
+    }
+
+    private final Graph        graph;
+    private final ForkJoinPool pool;
+
+
+    /**
+     * @param graph the graph to recommend from
+     * @param pool  the pool running the workers, one per thread
+     */
+    RecommendationBatch(Graph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+
+    /**
+     * The recommendationByDistance() result of every user in a range: the
+     * users fewer than dist connections away, in the order a breadth-first
+     * search reaches them
+     *
+     * @param dist     the distance bound, as for recommendationByDistance()
+     * @param fromUser the first user
+     * @param toUser   one past the last user
+     * @param sink     receives each user's result
+     * @return the number of users and the time taken
+     */
+    public Report neighborhoods(int dist, int fromUser, int toUser, Sink sink) {
+        int maxLevel = Math.max(dist - 1, 0);
+        return run(fromUser, toUser, sink, () -> {
+            BreadthFirstSearch search = new BreadthFirstSearch();
+            return (userId, out) -> {
+                int count = search.search(graph, userId, maxLevel);
+                for (int i = 0; i < count; i++) {
+                    out[i] = search.visitedAt(i);
+                }
+                return count;
+            };
+        });
+    }
+
+
+    /**
+     * The recommendFriends() result of every user in a range
+     *
+     * @param k        the most users to recommend to each user
+     * @param weighted true to rank by friendship strength, false by the
+     *                 number of mutual friends
+     * @param fromUser the first user
+     * @param toUser   one past the last user
+     * @param sink     receives each user's result
+     * @return the number of users and the time taken
+     */
+    public Report friends(int k, boolean weighted, int fromUser, int toUser, Sink sink) {
+        return run(fromUser, toUser, sink, () -> {
+            FriendRecommender recommender = new FriendRecommender();
+            return (userId, out) -> recommender.top(graph, userId, k, weighted, out);
+        });
+    }
+
+
+    // Run one job per worker over the users of [fromUser, toUser)
+    private Report run(int fromUser, int toUser, Sink sink, Supplier<Job> jobs) {
+        int from = Math.max(fromUser, 0);
+        int to = Math.min(toUser, graph.nodeCount());
+        AtomicInteger next = new AtomicInteger(from);
+        AtomicInteger done = new AtomicInteger();
+        long start = System.nanoTime();
+
+        int workers = pool.getParallelism();
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            tasks[w] = pool.submit(() -> {
+                Job job = jobs.get();
+                int[] out = new int[graph.nodeCount()];
+                int users = 0;
+                for (int first; (first = next.getAndAdd(CHUNK)) < to;) {
+                    for (int user = first, last = Math.min(first + CHUNK, to); user < last; user++) {
+                        if (graph.degree(user) > 0) {
+                            sink.accept(user, out, job.run(user, out));
+                            users++;
+                        }
+                    }
+                }
+                done.addAndGet(users);
+            });
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return new Report(done.get(), System.nanoTime() - start);
+    }
+}
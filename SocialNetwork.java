@@ -1,24 +1,269 @@
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SocialNetwork implements ISocialNetwork {
-    private Graph graph;
+
+    /**
+     * The graph implementation built by loadGraphFromDataSet().
+     * LINKED is the mutable adjacency list (GraphL); CSR is the immutable,
+     * array backed GraphCSR, which is much smaller and faster to traverse.
+     * OFF_HEAP keeps the CSR arrays outside the Java heap (GraphOffHeap);
+     * loadGraphFromSnapshot() then reads them straight from the mapped
+     * snapshot file. CONCURRENT (GraphConcurrent) accepts addFriendship()
+     * and removeFriendship() from any thread while queries keep running;
+     * each query reads the graph as of one moment between updates.
+     * CSR and OFF_HEAP take updates too: the first one wraps the graph in a
+     * GraphOverlay that keeps the changes beside it until they are
+     * compacted into a new graph.
+     */
+    public enum Storage {
+        LINKED, CSR, OFF_HEAP, CONCURRENT
+    }
+
+    /**
+     * The algorithm behind the traversal queries. STANDARD is a plain
+     * breadth-first search from the start vertex. BIDIRECTIONAL searches
+     * from both ends of a getShortestPathUnweighted() query and meets in the
+     * middle. DIRECTION_OPTIMIZING switches to bottom-up steps while the
+     * frontier is large, for recommendationByDistance() and distancesFrom();
+     * users it reaches bottom-up are listed in increasing ID order within
+     * their level. PARALLEL expands large frontiers of those same two
+     * queries across a ForkJoinPool and lists every level in increasing ID
+     * order. Queries an algorithm does not apply to use STANDARD.
+     */
+    public enum Traversal {
+        STANDARD, BIDIRECTIONAL, DIRECTION_OPTIMIZING, PARALLEL
+    }
+
+    private volatile Graph graph;
     private int nNodes;
+    private Storage storage = Storage.LINKED;
+    private Traversal traversal = Traversal.STANDARD;
+
+    // Traversal scratch space, one per thread so queries can run concurrently
+    private final ThreadLocal<BreadthFirstSearch> bfs =
+            ThreadLocal.withInitial(BreadthFirstSearch::new);
+    private final ThreadLocal<BidirectionalSearch> bidirectional =
+            ThreadLocal.withInitial(BidirectionalSearch::new);
+    private final ThreadLocal<DijkstraSearch> dijkstra =
+            ThreadLocal.withInitial(DijkstraSearch::new);
+    private final ThreadLocal<FriendRecommender> friends =
+            ThreadLocal.withInitial(FriendRecommender::new);
+    private ParallelBreadthFirstSearch parallel = new ParallelBreadthFirstSearch();
+    private ForkJoinPool loadPool;
+    private int edgeIndexMinDegree;
+    private Path dataSet;
+
+    // Background compaction of the overlay on read-only storage
+    private int compactAt;
+    private Executor compactor;
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private volatile NeighborhoodCache neighborhoods;
+    private volatile LandmarkOracle landmarks;
+    private boolean approximate;
+
+
+    /**
+     * Select the graph implementation used by the next call to
+     * loadGraphFromDataSet(). The graph already loaded is not affected.
+     *
+     * @param storage the graph implementation to build
+     */
+    public void setStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+
+    /**
+     * Select the algorithm used by the traversal queries. Every algorithm
+     * returns the same distances; they differ only in how much of the graph
+     * they explore to find them.
+     *
+     * @param traversal the algorithm to use
+     */
+    public void setTraversal(Traversal traversal) {
+        this.traversal = traversal;
+
+        // Traversals may list a level in different orders
+        NeighborhoodCache cache = neighborhoods;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+
+    /**
+     * Configure the PARALLEL traversal
+     *
+     * @param pool      the pool that expands the frontiers
+     * @param threshold the smallest frontier worth splitting across threads;
+     *                  smaller levels are expanded on the calling thread
+     */
+    public void setParallelism(ForkJoinPool pool, int threshold) {
+        this.parallel = new ParallelBreadthFirstSearch(pool, threshold);
+    }
+
+
+
+    /**
+     * Parse and build the graph on a pool in loadGraphFromDataSet(). The
+     * file is split into chunks parsed concurrently and the adjacency
+     * arrays are sorted in parallel.
+     *
+     * @param pool the pool to load on, or null to load on the calling thread
+     */
+    public void setParallelLoading(ForkJoinPool pool) {
+        this.loadPool = pool;
+    }
+
+
+    /**
+     * Give every user with at least minDegree friends a hash index of their
+     * friends when the CSR graph is loaded, making hasEdge() and weight()
+     * constant time for them instead of a binary search. Applies to the
+     * next load.
+     *
+     * @param minDegree the smallest degree to index, or 0 for no index
+     */
+    public void setEdgeIndex(int minDegree) {
+        this.edgeIndexMinDegree = minDegree;
+    }
+
+
+    /**
+     * Compact the changes made to CSR or OFF_HEAP storage in the
+     * background once maxDeltas of them are pending. Queries and updates
+     * keep running during a compaction, and the new graph is swapped in
+     * when it is ready.
+     *
+     * @param maxDeltas the number of pending edge changes that triggers a
+     *                  compaction, or 0 to compact only when
+     *                  compactEdgeDeltas() is called
+     * @param executor  runs the compactions; may be null only when
+     *                  maxDeltas is 0. If it rejects a compaction, the
+     *                  changes stay pending and the next change tries again
+     */
+    public void setCompaction(int maxDeltas, Executor executor) {
+        if (maxDeltas > 0 && executor == null) {
+            throw new IllegalArgumentException("Automatic compaction needs an executor");
+        }
+        this.compactAt = maxDeltas;
+        this.compactor = executor;
+    }
+
+
+    /**
+     * Cache the results of recommendationByDistance(). A hit returns a new
+     * list in the same order as a search would, skipping only the search.
+     * Friendship changes drop only the cached results they can affect, and
+     * selecting another traversal empties the cache.
+     *
+     * @param capacity the most user IDs to keep across all cached results,
+     *                 or 0 to turn the cache off
+     */
+    public void setNeighborhoodCache(long capacity) {
+        this.neighborhoods = capacity > 0 ? new NeighborhoodCache(capacity) : null;
+    }
+
+
+    /**
+     * @return the cache of recommendationByDistance() results, with its
+     *         hit, miss and eviction counts, or null if it is off
+     */
+    public NeighborhoodCache neighborhoodCache() {
+        return neighborhoods;
+    }
+
+
+    /**
+     * Precompute the distances from a few landmark users to everyone, which
+     * lets setApproximateDistances() answer distance queries without
+     * searching. The searches run on the pool given to
+     * setParallelLoading(), or the common pool. A friendship change or a
+     * new load discards the landmarks.
+     *
+     * @param count         the number of landmarks, or 0 to drop them; more
+     *                      give tighter bounds but cost one int per user
+     *                      each
+     * @param highestDegree true to use the best connected users as
+     *                      landmarks, false to pick them at random
+     * @throws IllegalArgumentException if count ints per user exceed the
+     *         largest array
+     */
+    public void buildLandmarkOracle(int count, boolean highestDegree) {
+        this.landmarks = count <= 0 ? null : LandmarkOracle.build(view(), count,
+                highestDegree, 42, loadPool == null ? ForkJoinPool.commonPool() : loadPool);
+    }
+
+
+    /**
+     * Choose between exact and approximate distances. When approximate and
+     * landmarks have been built, getShortestPathUnweighted() returns the
+     * length of the shortest path through a landmark, which is never less
+     * than the true distance, and recommendationByInterest() ranks users by
+     * that length. Users in a component without landmarks get exact
+     * answers, since the landmarks know nothing of them. Other queries stay
+     * exact.
+     *
+     * @param approximate true to use the landmarks
+     */
+    public void setApproximateDistances(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+
+    /**
+     * Bounds on the distance between two users from the landmarks, or the
+     * exact distance as both bounds when no landmarks have been built or
+     * none reaches either user
+     *
+     * @param user1 one user
+     * @param user2 the other user
+     * @return the lower bound followed by the upper bound; Integer.MAX_VALUE
+     *         stands for no path
+     */
+    public int[] distanceBounds(int user1, int user2) {
+        LandmarkOracle oracle = landmarks;
+        int upper = oracle == null ? LandmarkOracle.UNKNOWN : oracle.upperBound(user1, user2);
+        if (upper == LandmarkOracle.UNKNOWN) {
+            int exact = bfs.get().distance(view(), user1, user2);
+            return new int[] {exact, exact};
+        }
+        return new int[] {oracle.lowerBound(user1, user2), upper};
+    }
+
+
+    // The graph built by the last load, for the benchmarks
+    Graph graph() {
+        return graph;
+    }
+
+
+    // The graph for one query: a concurrent graph's snapshot, so updates
+    // made while the query runs are all seen or not at all
+    private Graph view() {
+        Graph current = graph;
+        return current instanceof GraphConcurrent ? ((GraphConcurrent) current).snapshot() : current;
+    }
+
 
-    
     /**
      * Create a graph representation of the dataset. The first line of the file
      * contains the number of nodes. Keep in mind that the vertex with id 0 is
@@ -29,51 +274,29 @@ public class SocialNetwork implements ISocialNetwork {
      */
     @Override
     public int loadGraphFromDataSet(String filePath) {
-        // Create a File object with the given file path
-        File file = new File(filePath);
-
-        // Initialize a Scanner to read the file
-        Scanner scanner = null;
+        // Map the file and parse every edge straight from its bytes; each
+        // line becomes edges in both directions with the weight (multiplied
+        // by 100), and edges to vertex 0 are skipped
+        MatrixMarketFile file;
         try {
-            scanner = new Scanner(file);
-        } catch (FileNotFoundException e) {
-            // If the file is not found, return -1 indicating an error
+            file = MatrixMarketFile.load(filePath, loadPool);
+        } catch (IOException e) {
+            // If the file cannot be read, return -1 indicating an error
             return -1;
         }
 
-        // Read the number of nodes and edges from the file
-        int numNodes = scanner.nextInt() + 1;
-        int numEdges = scanner.nextInt();
-
-        // Create a new instance of the GraphL class
-        this.graph = new GraphL();
-        this.graph.init(numNodes);
+        // Bulk-build the adjacency arrays in one pass; the linked graph is
+        // then filled from their already sorted rows
+        GraphCSR compact = new GraphCSR(file.nodeCount() + 1, file.parts(), loadPool);
+        this.graph = withStorage(storage, compact);
+        friendshipsChanged(-1, -1);
 
-        // Iterate over the edges and add them to the graph
-        for (int i = 0; i < numEdges; ++i) {
-            int from = scanner.nextInt();
-            int to = scanner.nextInt();
-
-            // Skip adding the edge if the destination is 0
-            if (to == 0) {
-                continue;
-            }
-
-            // Read the weight of the edge and convert it to an integer
-            double weight = scanner.nextDouble();
-
-            // Add edges in both directions with the weight (multiplied by 100)
-            this.graph.addEdge(from, to, (int) (weight * 100));
-            this.graph.addEdge(to, from, (int) (weight * 100));
-        }
-
-        // Close the scanner
-        scanner.close();
+        this.dataSet = Paths.get(filePath);
 
         // Count the number of nodes in the graph by checking the non-empty neighbors
         this.nNodes = 0;
         for (int i = 1; i < graph.nodeCount(); ++i) {
-            if (graph.neighbors(i).length > 0) {
+            if (graph.degree(i) > 0) {
                 this.nNodes++;
             }
         }
@@ -83,131 +306,377 @@ public class SocialNetwork implements ISocialNetwork {
     }
 
 
-    @Override
-    public int getShortestPathUnweighted(int user1, int user2) {
+    // Convert a freshly loaded graph to the given storage
+    private Graph withStorage(Storage storage, Graph loaded) {
+        switch (storage) {
+            case CSR:
+                GraphCSR compact = GraphCSR.copyOf(loaded);
+                compact.indexHighDegree(edgeIndexMinDegree);
+                return compact;
+            case OFF_HEAP:
+                return loaded instanceof GraphOffHeap ? loaded : GraphOffHeap.copyOf(loaded);
+            case CONCURRENT:
+                return GraphConcurrent.copyOf(loaded);
+            default:
+                GraphL linked = new GraphL();
+                linked.copyEdges(loaded);
+                return linked;
+        }
+    }
 
-        // Initialize a flag to represent is there a path between user1 and user2
-        boolean found = false;
-        // Initialize a set to keep track of visited nodes
-        Set<Integer> visited = new HashSet<>();
 
-        // Initialize a queue to store nodes to visit
-        ArrayList<Integer> nodeQueue = new ArrayList<>();
+    /**
+     * Save the loaded graph as a binary snapshot that loadGraphFromSnapshot()
+     * can reopen without parsing the data set again.
+     *
+     * @param filePath the snapshot file to write
+     * @return true if the snapshot was written
+     */
+    public boolean saveSnapshot(String filePath) {
+        try {
+            GraphSnapshot.save(graph, nNodes, dataSet, Paths.get(filePath));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-        // Add the starting node (user1) to the queue and mark it as visited
-        nodeQueue.add(user1);
-        visited.add(user1);
 
-        // Initialize the distance variable
-        int distance = 0;
+    /**
+     * Load the graph from a snapshot written by saveSnapshot(). A snapshot
+     * that is truncated, corrupt, from another format version, or older than
+     * the data set it was taken from is rejected.
+     *
+     * @param filePath    the snapshot file
+     * @param dataSetPath the data set the snapshot was taken from, or null to
+     *                    skip the staleness check
+     * @return the number of entries (nodes) in the graph, or -1 if the
+     *         snapshot cannot be used
+     */
+    public int loadGraphFromSnapshot(String filePath, String dataSetPath) {
+        Path source = dataSetPath == null ? null : Paths.get(dataSetPath);
+        GraphSnapshot snapshot;
+        try {
+            // Off-heap storage serves the graph from the mapped file itself
+            snapshot = storage == Storage.OFF_HEAP
+                    ? GraphSnapshot.open(Paths.get(filePath), source)
+                    : GraphSnapshot.read(Paths.get(filePath), source);
+        } catch (IOException e) {
+            return -1;
+        }
+        this.graph = withStorage(storage, snapshot.graph());
+        friendshipsChanged(-1, -1);
+        this.dataSet = source;
 
-        // Perform breadth-first search to find the shortest path
-        while (nodeQueue.size() > 0) {
-            // Create a list to store nodes at the same distance from the starting node
-            ArrayList<Integer> nodesInTheSameDistance = new ArrayList<>();
+        // The node count was stored with the snapshot
+        this.nNodes = snapshot.activeNodes();
+        return this.nNodes;
+    }
 
-            // Process nodes at the current distance level
-            while (nodeQueue.size() > 0) {
-                // Remove a node from the queue
-                int removed = nodeQueue.remove(0);
 
-                // If the removed node is the target node (user2), exit the loop
-                if (removed == user2) {
-                    found = true;
-                    break;
-                }
+    /**
+     * Add a friendship between two users, or change its weight if they are
+     * already friends. With CONCURRENT, CSR or OFF_HEAP storage this may be
+     * called from any thread while queries run; LINKED storage is not
+     * thread safe.
+     *
+     * @param user1  one user
+     * @param user2  the other user
+     * @param weight the strength of the friendship, between 0 and 1 as in
+     *               the data set
+     */
+    public void addFriendship(int user1, int user2, double weight) {
+        if (graph instanceof GraphConcurrent) {
+            ((GraphConcurrent) graph).addEdgePair(user1, user2, (int) (weight * 100));
+        } else if (graph instanceof GraphL) {
+            graph.addEdge(user1, user2, (int) (weight * 100));
+            graph.addEdge(user2, user1, (int) (weight * 100));
+        } else {
+            GraphOverlay overlay = overlay();
+            overlay.addEdgePair(user1, user2, (int) (weight * 100));
+            compactIfDue(overlay);
+        }
+        friendshipsChanged(user1, user2);
+    }
 
-                // Add the removed node to the list of nodes at the same distance
-                nodesInTheSameDistance.add(removed);
-            }
 
-            // Process the nodes at the same distance level
-            for (int node : nodesInTheSameDistance) {
-                // Get the neighbors of the current node
-                int[] neighbors = graph.neighbors(node);
+    /**
+     * Remove the friendship between two users, if there is one. The same
+     * threading rules as for addFriendship() apply.
+     *
+     * @param user1 one user
+     * @param user2 the other user
+     */
+    public void removeFriendship(int user1, int user2) {
+        if (graph instanceof GraphConcurrent) {
+            ((GraphConcurrent) graph).removeEdgePair(user1, user2);
+        } else if (graph instanceof GraphL) {
+            graph.removeEdge(user1, user2);
+            graph.removeEdge(user2, user1);
+        } else {
+            GraphOverlay overlay = overlay();
+            overlay.removeEdgePair(user1, user2);
+            compactIfDue(overlay);
+        }
+        friendshipsChanged(user1, user2);
+    }
 
-                // Iterate over the neighbors
-                for (int i = 0; i < neighbors.length; i++) {
-                    int neighbor = neighbors[i];
 
-                    // If the neighbor has not been visited, 
-                    // add it to the queue and mark it as visited
-                    if (!visited.contains(neighbor)) {
-                        nodeQueue.add(neighbor);
-                        visited.add(neighbor);
+    /**
+     * Apply a file of friendship changes to the loaded graph, instead of
+     * reloading the whole data set. Each line is one change:
+     *
+     *   + user1 user2 weight    add a friendship or change its weight
+     *   - user1 user2           remove a friendship
+     *
+     * Blank lines and lines starting with % are skipped, as are lines that
+     * cannot be parsed.
+     *
+     * @param filePath the path of the change file
+     * @return the number of changes applied, or -1 if the file cannot be
+     *         read
+     */
+    public int applyEdgeDeltas(String filePath) {
+        int applied = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                try {
+                    if (parts.length == 4 && parts[0].equals("+")) {
+                        addFriendship(Integer.parseInt(parts[1]),
+                                Integer.parseInt(parts[2]), Double.parseDouble(parts[3]));
+                        applied++;
+                    } else if (parts.length == 3 && parts[0].equals("-")) {
+                        removeFriendship(Integer.parseInt(parts[1]),
+                                Integer.parseInt(parts[2]));
+                        applied++;
                     }
+                } catch (NumberFormatException e) {
+                    // Skip the malformed line
                 }
             }
+        } catch (IOException e) {
+            return -1;
+        }
+        return applied;
+    }
+
+
+    /**
+     * Merge the friendship changes made to CSR or OFF_HEAP storage into a
+     * new compact graph and swap it in. Queries and updates may run while
+     * this does; other storages apply changes in place and have nothing to
+     * compact.
+     *
+     * @return the number of edge changes merged
+     */
+    public int compactEdgeDeltas() {
+        Graph current = graph;
+        if (!(current instanceof GraphOverlay)) {
+            return 0;
+        }
+        GraphOverlay overlay = (GraphOverlay) current;
+        // Rebuild in the storage the base graph already uses
+        Storage kind = overlay.base() instanceof GraphOffHeap ? Storage.OFF_HEAP : Storage.CSR;
+        return overlay.compact(merged -> withStorage(kind, merged));
+    }
+
+
+    /**
+     * @return the number of edge changes not yet compacted
+     */
+    public int pendingEdgeDeltas() {
+        Graph current = graph;
+        return current instanceof GraphOverlay ? ((GraphOverlay) current).pendingDeltas() : 0;
+    }
+
+
+    // The overlay taking updates to read-only storage, created on the
+    // first update
+    private synchronized GraphOverlay overlay() {
+        if (!(graph instanceof GraphOverlay)) {
+            graph = new GraphOverlay(graph);
+        }
+        return (GraphOverlay) graph;
+    }
+
+
+    // Drop the landmarks and the cached neighborhoods a change between two
+    // users may affect; -1 for both when the whole graph was replaced
+    private void friendshipsChanged(int user1, int user2) {
+        landmarks = null;
+        NeighborhoodCache cache = neighborhoods;
+        if (cache == null) {
+            return;
+        }
+        if (user1 < 0) {
+            cache.clear();
+        } else {
+            cache.invalidate(user1, user2);
+        }
+    }
+
+
+    // Queue a background compaction once enough changes are pending
+    private void compactIfDue(GraphOverlay overlay) {
+        if (compactAt > 0 && overlay.pendingDeltas() >= compactAt
+                && compactionQueued.compareAndSet(false, true)) {
+            try {
+                compactor.execute(() -> {
+                    try {
+                        compactEdgeDeltas();
+                    } finally {
+                        compactionQueued.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The change is already made; leave it pending and let the
+                // next change queue the compaction again
+                compactionQueued.set(false);
+            }
+        }
+    }
 
-            // Increment the distance as we move to the next level
-            distance++;
+
+    @Override
+    public int getShortestPathUnweighted(int user1, int user2) {
+        // Answer from the landmarks in O(landmarks) without searching,
+        // unless no landmark reaches either user
+        LandmarkOracle oracle = landmarks;
+        if (approximate && oracle != null) {
+            int upper = oracle.upperBound(user1, user2);
+            if (upper != LandmarkOracle.UNKNOWN) {
+                return upper;
+            }
         }
 
-        // If there is no path between two users, the distance is infinity
-        if (!found) {
-            return Integer.MAX_VALUE;
+        // Search from both users at once and stop where the searches meet
+        if (traversal == Traversal.BIDIRECTIONAL) {
+            return bidirectional.get().distance(view(), user1, user2);
         }
 
-        // Else, return the shortest distance between the two nodes
-        return distance;
+        // Breadth-first search from user1 that stops as soon as user2 is
+        // reached; Integer.MAX_VALUE means there is no path between them
+        return bfs.get().distance(view(), user1, user2);
     }
 
 
     @Override
-    public List<Integer> recommendationByDistance(int dist, int userId) {
-        // Initialize a list to keep track of visited nodes
-        ArrayList<Integer> visited = new ArrayList<>();
+    public double getShortestPathWeighted(int user1, int user2) {
+        // Dijkstra from user1 that stops once user2's distance is final
+        return dijkstra.get().distance(view(), user1, user2);
+    }
 
-        // Initialize a queue to store nodes to visit
-        ArrayList<Integer> nodeQueue = new ArrayList<>();
 
-        // Add the starting user ID to the queue and mark it as visited
-        nodeQueue.add(userId);
-        visited.add(userId);
+    @Override
+    public List<Integer> recommendationByWeightedDistance(double radius, int userId) {
+        // Settle users in increasing distance until the radius is passed
+        DijkstraSearch search = dijkstra.get();
+        int count = search.within(view(), userId, radius);
+        List<Integer> settled = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            settled.add(search.settledAt(i));
+        }
+        return settled;
+    }
 
-        // Initialize the current distance variable
-        int currentDistance = 1;
 
-        // Perform breadth-first search up to the given distance
-        while (nodeQueue.size() > 0 && currentDistance < dist) {
-            // Create a list to store nodes at the same distance from the starting user
-            ArrayList<Integer> nodesInTheSameDistance = new ArrayList<>();
+    @Override
+    public List<Integer> recommendFriends(int userId, int k, boolean weighted) {
+        // Score every friend of a friend in one pass, then keep the best k
+        int[] best = friends.get().top(view(), userId, k, weighted);
+        List<Integer> recommended = new ArrayList<>(best.length);
+        for (int user : best) {
+            recommended.add(user);
+        }
+        return recommended;
+    }
 
-            // Process nodes at the current distance level
-            while (nodeQueue.size() > 0) {
-                // Remove a node from the queue
-                int removed = nodeQueue.remove(0);
 
-                // Add the removed node to the list of nodes at the same distance
-                nodesInTheSameDistance.add(removed);
-            }
+    /**
+     * Returns the k users with the most mutual friends who are not yet
+     * friends of the user
+     *
+     * @param userId the user to recommend friends to
+     * @param k      the most users to return
+     * @return at most k users, best first
+     */
+    public List<Integer> recommendFriends(int userId, int k) {
+        return recommendFriends(userId, k, false);
+    }
+
+
+    /**
+     * A batch job computing recommendationByDistance() or recommendFriends()
+     * for every user in a range, on all the threads of a pool, over the
+     * graph loaded now
+     *
+     * @param pool the pool running the job
+     * @return the batch job
+     */
+    public RecommendationBatch recommendationBatch(ForkJoinPool pool) {
+        return new RecommendationBatch(view(), pool);
+    }
 
-            // Process the nodes at the same distance level
-            for (int node : nodesInTheSameDistance) {
-                // Get the neighbors of the current node
-                int[] neighbors = graph.neighbors(node);
 
-                // Iterate over the neighbors
-                for (int i = 0; i < neighbors.length; i++) {
-                    int neighbor = neighbors[i];
+    @Override
+    public int[] distancesFrom(int userId) {
+        // One search from userId reaches every user it is connected to
+        if (traversal == Traversal.PARALLEL) {
+            return parallel.distances(view(), userId);
+        }
+        return bfs.get().distances(view(), userId,
+                traversal == Traversal.DIRECTION_OPTIMIZING);
+    }
 
-                    // If the neighbor has not been visited,
-                    // add it to the queue and mark it as visited
-                    if (!visited.contains(neighbor)) {
-                        nodeQueue.add(neighbor);
-                        visited.add(neighbor);
-                    }
-                }
-            }
 
-            // Increment the current distance as we move to the next level
-            currentDistance++;
+    @Override
+    public List<Integer> recommendationByDistance(int dist, int userId) {
+        // Visit every user fewer than dist connections away (the user itself
+        // included), level by level
+        int maxLevel = Math.max(dist - 1, 0);
+
+        // Serve repeated requests from the cache, which keeps the search
+        // order; the version read first keeps a result that raced an update
+        // out of it
+        NeighborhoodCache cache = neighborhoods;
+        int[] reached = cache == null ? null : cache.get(userId, maxLevel);
+        if (reached == null) {
+            long version = cache == null ? 0 : cache.version();
+            reached = within(userId, maxLevel);
+            if (cache != null) {
+                cache.put(userId, maxLevel, reached, version);
+            }
         }
 
-        // Return the list of visited nodes within the specified distance
+        // Return the visited users in the order they were reached
+        List<Integer> visited = new ArrayList<>(reached.length);
+        for (int user : reached) {
+            visited.add(user);
+        }
         return visited;
     }
 
+
+    // The users at most maxLevel connections from userId, in the order the
+    // selected traversal reaches them
+    private int[] within(int userId, int maxLevel) {
+        Graph current = view();
+        if (traversal == Traversal.PARALLEL) {
+            return parallel.within(current, userId, maxLevel);
+        }
+        BreadthFirstSearch search = bfs.get();
+        int count = traversal == Traversal.DIRECTION_OPTIMIZING
+                ? search.searchDirectionOptimizing(current, userId, maxLevel)
+                : search.search(current, userId, maxLevel);
+        int[] reached = new int[count];
+        for (int i = 0; i < count; i++) {
+            reached[i] = search.visitedAt(i);
+        }
+        return reached;
+    }
+
     /**
      * This method reads a dataset containing fake user interests and returns a Map
      * where the key is the user ID and the value is a List of the user's interest IDs.
@@ -217,54 +686,78 @@ public class SocialNetwork implements ISocialNetwork {
      */
     @Override
     public Map<Integer, List<Integer>> loadUserInterests(String filepath) {
-        // Create an empty HashMap to store the user IDs and their interests
-        Map<Integer, List<Integer>> userInterests = new HashMap<>();
-
-        // Create a new File object based on the file path provided
-        File file = new File(filepath);
+        // Parse the file into primitive arrays, then box them into the map
+        // of user IDs to lists of interest IDs
         try {
-            // Create a new Scanner object to read the contents of the file
-            Scanner scanner = new Scanner(file);
-            // Loop through each line in the file
-            while (scanner.hasNextLine()) {
-                // Read the line and split it into two parts: the user ID and a list of interests
-                String line = scanner.nextLine();
-                line.trim();
-                String[] parts = line.split("=");
-
-                // Parse the user ID as an integer
-                int userId = Integer.parseInt(parts[0].trim());
-
-                // Parse the list of interests as an array of strings, then convert each interest
-                // string to an integer and add it to a list
-                String interestsString = parts[1].replace("[", "").replace("]", "").trim();
-
-                if (interestsString.length() == 0) {
-                    userInterests.put(userId, new ArrayList<>());
-                    continue;
-                }
-                String[] interestsItems = interestsString.split(",");
+            return UserInterests.read(Paths.get(filepath)).toMap();
+        } catch (IOException e) {
+            // If the file cannot be read, throw a runtime exception
+            throw new RuntimeException(e);
+        }
+    }
 
-                List<Integer> interests = new ArrayList<>();
 
-                for (String interest : interestsItems) {
-                    interests.add(Integer.parseInt(interest.trim()));
+    /**
+     * Parse user interests into two primitive arrays rather than a map of
+     * lists. Lines that cannot be parsed are skipped and reported by
+     * UserInterests.malformedLines().
+     *
+     * @param filepath the path to the file containing the dataset
+     * @return the interests of every user, or null if the file cannot be
+     *         read
+     */
+    public UserInterests loadInterestTable(String filepath) {
+        try {
+            return UserInterests.read(Paths.get(filepath));
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-                }
 
-                // Add the user ID and list of interests to the HashMap
-                userInterests.put(userId, interests);
-            }
-            scanner.close(); 
-        } catch (FileNotFoundException e) {
-            // If the file cannot be found, throw a runtime exception
+    /**
+     * Load user interests into a bitset per interest, for fast membership,
+     * counting and combination of interests
+     *
+     * @param filepath the path to the file containing the dataset
+     * @return the index of users by interest
+     */
+    public InterestIndex loadInterestIndex(String filepath) {
+        try {
+            return InterestIndex.of(UserInterests.read(Paths.get(filepath)));
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Return the HashMap containing the user IDs and their interests
-        return userInterests;
     }
 
-  
+
+    /**
+     * Returns the users fewer than dist connections away from a user who
+     * have every one of the given interests. The users reached are set in a
+     * bitset and intersected with the interests a word at a time.
+     *
+     * @param dist        the distance bound, as for recommendationByDistance()
+     * @param userId      the user to search from
+     * @param interests   the interest index
+     * @param interestIds the interests every returned user must have
+     * @return the matching users in increasing ID order
+     */
+    public List<Integer> recommendationByDistanceAndInterests(int dist, int userId,
+            InterestIndex interests, int... interestIds) {
+        BitSet matching = new BitSet(graph.nodeCount());
+        for (int user : within(userId, Math.max(dist - 1, 0))) {
+            matching.set(user);
+        }
+        matching.and(interests.allOf(interestIds));
+
+        List<Integer> users = new ArrayList<>(matching.cardinality());
+        for (int user = matching.nextSetBit(0); user >= 0; user = matching.nextSetBit(user + 1)) {
+            users.add(user);
+        }
+        return users;
+    }
+
+
     @Override
     public Map<Integer, List<Integer>> clusterUserByInterest(
             Map<Integer, List<Integer>> interestMap) {
@@ -297,9 +790,10 @@ public class SocialNetwork implements ISocialNetwork {
     @Override
     public List<Integer> getUsersInterestCluster(
             int interestID, Map<Integer, List<Integer>> clusteredUsers) {
-        // If the interestMap contains the given interestID, return the associated list of user IDs
+        // If the interestMap contains the given interestID, return the associated
+        // list of user IDs, read-only so callers cannot change the cluster
         if (clusteredUsers.containsKey(interestID)) {
-            return clusteredUsers.get(interestID);
+            return Collections.unmodifiableList(clusteredUsers.get(interestID));
         }
 
         // If the interestID does not exist in the interestMap, return an empty list
@@ -310,18 +804,27 @@ public class SocialNetwork implements ISocialNetwork {
     @Override
     public List<Integer> recommendationByInterest(
             int interestId, int userId, Map<Integer, List<Integer>> clusteredUsers) {
-        // Get a list of user IDs associated with the specified interest cluster
-        List<Integer> usersWithSameInterest = clusteredUsers.get(interestId);
-
-        // Create a map to store the shortest unweighted path between each user and the given user
-        Map<Integer, Integer> distanceByUser = new HashMap<>();
-        for (int user : usersWithSameInterest) {
-            int distance = getShortestPathUnweighted(userId, user);
-            distanceByUser.put(user, distance);
+        // Copy the user IDs of the specified interest cluster, so sorting
+        // them leaves the cluster itself unchanged
+        List<Integer> usersWithSameInterest = new ArrayList<>(
+                getUsersInterestCluster(interestId, clusteredUsers));
+
+        // Rank by the landmark estimate, a few array reads per user, when
+        // the landmarks reach the user and so know every estimate
+        LandmarkOracle oracle = landmarks;
+        if (approximate && oracle != null && oracle.reaches(userId)) {
+            Collections.sort(usersWithSameInterest, Comparator.comparingInt(
+                user -> oracle.upperBound(userId, user)));
+            return usersWithSameInterest;
         }
 
-        // Sort the list of users by the distances stored in the map
-        Collections.sort(usersWithSameInterest, Comparator.comparingInt(distanceByUser::get));
+        // Compute the shortest unweighted path from the given user to every
+        // user at once rather than searching once per user in the cluster
+        int[] distances = distancesFrom(userId);
+
+        // Sort the list of users by their distance from the given user
+        Collections.sort(usersWithSameInterest, Comparator.comparingInt(
+            user -> user < distances.length ? distances[user] : Integer.MAX_VALUE));
 
         // Return the sorted list of users
         return usersWithSameInterest;
@@ -366,6 +869,23 @@ public class SocialNetwork implements ISocialNetwork {
      
 
 
+    /**
+     * Load likes into a columnar store: per user, the posts liked and the
+     * times they were liked, most recent first, in primitive arrays. It
+     * answers both postByUser() style and per post queries.
+     *
+     * @param filepath the path to the file of posts and their likes
+     * @return the store, or null if the file cannot be read
+     */
+    public LikeStore loadLikes(String filepath) {
+        try {
+            return LikeStore.read(Paths.get(filepath));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+
     @Override
     public Map<Integer, List<LikedPost>> postByUser(Map<Integer, List<LikedPost>> posts) {
         Map<Integer, List<LikedPost>> res = new HashMap<>(); 
@@ -389,28 +909,88 @@ public class SocialNetwork implements ISocialNetwork {
     @Override
     public Map<Integer, List<Integer>> recommendPost(int userId, Instant earliest, 
                                          Map<Integer, List<LikedPost>> likedPosts) {
-        List<LikedPost> posts = new ArrayList<>(); 
-        int[] neighbors = this.graph.neighbors(userId); 
+        return recommendPost(userId, earliest, likedPosts, Integer.MAX_VALUE);
+    }
+
+
+    @Override
+    public Map<Integer, List<Integer>> recommendPost(int userId, Instant earliest,
+                                         Map<Integer, List<LikedPost>> likedPosts, int limit) {
+        // Each friend's likes are sorted most recent first, so merge them
+        // newest first instead of collecting and sorting them all; a friend
+        // without likes has no list
+        int[] neighbors = this.graph.neighbors(userId);
+        List<List<LikedPost>> likes = new ArrayList<>(neighbors.length);
         for (int neigh : neighbors) {
-            List<LikedPost> likes = likedPosts.get(neigh); 
-            for (LikedPost like : likes) {
-                if (like.getTimestamp().compareTo(earliest) > 0) { 
-                    // only get posts within timeframe 
-                    posts.add(like);
-                } else {
-                    break; 
-                }
-            }
+            likes.add(likedPosts.get(neigh));
         }
-         
-        Collections.sort(posts);                    // sort posts by reversed time of liking 
-        Map<Integer, List<Integer>> res = new HashMap<>(); 
-        for (LikedPost post : posts) {              // only add post ids into result
-            if (!res.containsKey(post.getPostId())) {
-                res.put(post.getPostId(), new ArrayList<Integer>());
+        return LikeMerge.of(likes, earliest).posts(limit);
+    }
+
+
+    /**
+     * Same as recommendPost(), reading the likes from a store
+     *
+     * @param userId   the user to recommend posts to
+     * @param earliest only likes after this time count
+     * @param likes    the store returned by loadLikes()
+     * @param limit    the most posts to return
+     * @return the posts, by the time a friend last liked them, newest
+     *         first, each mapped to the friends who liked it
+     */
+    public Map<Integer, List<Integer>> recommendPost(int userId, Instant earliest,
+                                         LikeStore likes, int limit) {
+        // Likes after earliest are those at or after the next millisecond
+        return LikeMerge.of(likes, this.graph.neighbors(userId),
+                earliest.toEpochMilli() + 1, Long.MAX_VALUE).posts(limit);
+    }
+
+
+    /**
+     * Same as recommendPost(), reading the likes received so far by a live
+     * index; likes appended while the call runs may or may not be seen
+     *
+     * @param userId   the user to recommend posts to
+     * @param earliest only likes after this time count
+     * @param likes    the likes received so far
+     * @param limit    the most posts to return
+     * @return the posts, by the time a friend last liked them, newest
+     *         first, each mapped to the friends who liked it
+     */
+    public Map<Integer, List<Integer>> recommendPost(int userId, Instant earliest,
+                                         LiveLikes likes, int limit) {
+        return LikeMerge.of(likes, this.graph.neighbors(userId),
+                earliest.toEpochMilli() + 1, Long.MAX_VALUE).posts(limit);
+    }
+
+
+    /**
+     * The posts liked by the user's network during a time window: every
+     * user at most hops connections away, the user excluded
+     *
+     * @param userId the user whose network to follow
+     * @param hops   the largest distance of a user in the network
+     * @param from   the start of the window, inclusive
+     * @param to     the end of the window, exclusive
+     * @param likes  the store returned by loadLikes()
+     * @param limit  the most posts to return
+     * @return the posts, by the time they were last liked in the window,
+     *         newest first, each mapped to the users in the network who
+     *         liked it then, most recent first
+     */
+    public Map<Integer, List<Integer>> networkActivity(int userId, int hops, Instant from,
+            Instant to, LikeStore likes, int limit) {
+        // Find the network, then slice every member's likes to the window
+        // by binary search and merge the slices newest first
+        int[] reached = within(userId, Math.max(hops, 0));
+        int[] network = new int[reached.length];
+        int members = 0;
+        for (int user : reached) {
+            if (user != userId) {
+                network[members++] = user;
             }
-            res.get(post.getPostId()).add(post.getUserId()); 
         }
-        return res;
+        return LikeMerge.of(likes, Arrays.copyOf(network, members),
+                from.toEpochMilli(), to.toEpochMilli()).posts(limit);
     }
 }
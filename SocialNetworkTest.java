@@ -1,9 +1,27 @@
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.Assert.*;
 
@@ -15,12 +33,453 @@ public class SocialNetworkTest {
         assertEquals(6386, nodeCount);
     }
 
+    @Test
+    public void loadGraphFromSnapshot() throws IOException {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        Path snapshot = Files.createTempFile("socfb", ".graph");
+        assertTrue(socialNetwork.saveSnapshot(snapshot.toString()));
+
+        SocialNetwork restored = new SocialNetwork();
+        assertEquals(6386, restored.loadGraphFromSnapshot(snapshot.toString(),
+                "./data/socfb-American75.mtx"));
+        assertEquals(3, restored.getShortestPathUnweighted(123, 456));
+
+        // A truncated snapshot is rejected
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 4));
+        assertEquals(-1, restored.loadGraphFromSnapshot(snapshot.toString(), null));
+        Files.delete(snapshot);
+    }
+
+    @Test
+    public void loadGraphOffHeap() throws IOException {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.OFF_HEAP);
+        assertEquals(6386, socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx"));
+        assertEquals(438, socialNetwork.recommendationByDistance(3, 1234).size());
+
+        // Reopening the snapshot maps it instead of copying it
+        Path snapshot = Files.createTempFile("socfb", ".graph");
+        assertTrue(socialNetwork.saveSnapshot(snapshot.toString()));
+        assertEquals(6386, socialNetwork.loadGraphFromSnapshot(snapshot.toString(), null));
+        assertEquals(3, socialNetwork.getShortestPathUnweighted(123, 456));
+        Files.delete(snapshot);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offHeapTooManyEdges() {
+        // Three users with a billion friends each: 3 billion edges overflow
+        // the int offsets, so the copy is refused before anything is stored
+        Graph huge = (Graph) Proxy.newProxyInstance(Graph.class.getClassLoader(),
+                new Class<?>[] {Graph.class},
+                (proxy, method, args) -> method.getName().equals("nodeCount") ? 3 : 1_000_000_000);
+        GraphOffHeap.copyOf(huge);
+    }
+
+    @Test
+    public void loadGraphInParallel() throws IOException {
+        SocialNetwork sequential = new SocialNetwork();
+        sequential.setStorage(SocialNetwork.Storage.CSR);
+        SocialNetwork parallel = new SocialNetwork();
+        parallel.setStorage(SocialNetwork.Storage.CSR);
+        parallel.setParallelLoading(new ForkJoinPool(4));
+
+        assertEquals(sequential.loadGraphFromDataSet("./data/socfb-American75.mtx"),
+                parallel.loadGraphFromDataSet("./data/socfb-American75.mtx"));
+        assertSameRows(sequential.graph(), parallel.graph());
+
+        // Both stop at the edge count of the header
+        Path file = Files.createTempFile("edges", ".mtx");
+        Files.write(file, Arrays.asList("% comment", "4 4 2", "1 2 0.5", "2 3 1.5", "3 4 1"));
+        assertEquals(3, sequential.loadGraphFromDataSet(file.toString()));
+        assertEquals(3, parallel.loadGraphFromDataSet(file.toString()));
+        Files.delete(file);
+        assertSameRows(sequential.graph(), parallel.graph());
+        assertFalse(parallel.graph().hasEdge(3, 4));
+
+        // A header claiming a billion edges reserves room only for the lines
+        // the file holds
+        Files.write(file, Arrays.asList("4 4 1000000000", "1 2 0.5", "2 3 1.5"));
+        assertEquals(3, sequential.loadGraphFromDataSet(file.toString()));
+        assertEquals(3, parallel.loadGraphFromDataSet(file.toString()));
+        Files.delete(file);
+        assertSameRows(sequential.graph(), parallel.graph());
+        assertEquals(4, sequential.graph().edgeCount());
+    }
+
+    @Test
+    public void loadLinkedGraphWithManyVertices() throws IOException {
+        // Two million vertices, almost all without edges: the linked load
+        // must stay linear in the vertex count
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.LINKED);
+        Path file = Files.createTempFile("sparse", ".mtx");
+        Files.write(file, Arrays.asList("2000000 2000000 2", "1 2000000 1", "2000000 2 1"));
+        assertEquals(3, socialNetwork.loadGraphFromDataSet(file.toString()));
+        Files.delete(file);
+        assertEquals(2000001, socialNetwork.graph().nodeCount());
+        assertEquals(2, socialNetwork.getShortestPathUnweighted(1, 2));
+    }
+
+    // Same vertices, and the same neighbors with the same weights
+    private static void assertSameRows(Graph expected, Graph actual) {
+        assertEquals(expected.nodeCount(), actual.nodeCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int v = 0; v < expected.nodeCount(); v++) {
+            int[] neighbors = expected.neighbors(v);
+            assertArrayEquals(neighbors, actual.neighbors(v));
+            for (int w : neighbors) {
+                assertEquals(expected.weight(v, w), actual.weight(v, w));
+            }
+        }
+    }
+
+    @Test
+    public void edgeIndexLookups() {
+        SocialNetwork plain = new SocialNetwork();
+        plain.setStorage(SocialNetwork.Storage.CSR);
+        plain.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        SocialNetwork indexed = new SocialNetwork();
+        indexed.setStorage(SocialNetwork.Storage.CSR);
+        indexed.setEdgeIndex(100);
+        indexed.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        assertSameLookups(plain.graph(), indexed.graph());
+
+        // 60 random friends among 2000 users fill a 128 slot table unevenly,
+        // so some of them, and many absent users, are found only by probing
+        Random random = new Random(5);
+        EdgeList edges = new EdgeList();
+        for (int i = 0; i < 60; i++) {
+            edges.add(0, 1 + random.nextInt(2000), 1 + i);
+        }
+        GraphCSR graph = new GraphCSR(2001, edges);
+        GraphCSR hashed = new GraphCSR(2001, edges);
+        hashed.indexHighDegree(1);
+        assertSameLookups(graph, hashed);
+    }
+
+    // Same hasEdge() and weight() for every pair of a vertex and a few
+    // neighbors and non-neighbors of it
+    private static void assertSameLookups(Graph expected, Graph actual) {
+        int n = expected.nodeCount();
+        for (int v = 0; v < n; v++) {
+            int step = expected.degree(v) >= 50 ? 1 : 97;
+            for (int w = v % step; w < n; w += step) {
+                assertEquals(expected.hasEdge(v, w), actual.hasEdge(v, w));
+                assertEquals(expected.weight(v, w), actual.weight(v, w));
+            }
+            for (int w : expected.neighbors(v)) {
+                assertTrue(actual.hasEdge(v, w));
+                assertEquals(expected.weight(v, w), actual.weight(v, w));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentFriendshipUpdates() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.CONCURRENT);
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        socialNetwork.addFriendship(123, 456, 0.5);
+        assertEquals(1, socialNetwork.getShortestPathUnweighted(123, 456));
+        socialNetwork.removeFriendship(123, 456);
+        assertEquals(3, socialNetwork.getShortestPathUnweighted(456, 123));
+    }
+
+    @Test
+    public void concurrentSnapshots() throws InterruptedException {
+        GraphConcurrent graph = GraphConcurrent.copyOf(new GraphCSR(200, new EdgeList()));
+        Graph before = graph.snapshot();
+        assertSame(before, graph.snapshot());
+        graph.addEdgePair(1, 2, 100);
+        assertFalse(before.hasEdge(1, 2));
+        assertTrue(graph.snapshot().hasEdge(2, 1));
+
+        // A writer flips friendships while a reader checks that every
+        // snapshot has both directions of each one, and the right count
+        Thread writer = new Thread(() -> {
+            Random random = new Random(3);
+            for (int i = 0; i < 200_000; i++) {
+                int v = random.nextInt(200);
+                int w = random.nextInt(200);
+                if (random.nextBoolean()) {
+                    graph.addEdgePair(v, w, 1 + random.nextInt(100));
+                } else {
+                    graph.removeEdgePair(v, w);
+                }
+            }
+        });
+        String[] failure = new String[1];
+        Thread reader = new Thread(() -> {
+            while (writer.isAlive() && failure[0] == null) {
+                Graph snapshot = graph.snapshot();
+                int edges = 0;
+                for (int v = 0; v < snapshot.nodeCount(); v++) {
+                    for (int w : snapshot.neighbors(v)) {
+                        if (snapshot.weight(w, v) != snapshot.weight(v, w)) {
+                            failure[0] = "only " + v + " -> " + w;
+                        }
+                    }
+                    edges += snapshot.degree(v);
+                }
+                if (edges != snapshot.edgeCount()) {
+                    failure[0] = edges + " edges counted as " + snapshot.edgeCount();
+                }
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertNull(failure[0]);
+    }
+
+    @Test
+    public void applyAndCompactEdgeDeltas() throws IOException {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.CSR);
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        Path deltas = Files.createTempFile("deltas", ".txt");
+        Files.write(deltas, Arrays.asList("+ 123 456 0.5", "- 123 456", "+ 456 123 0.25"));
+        assertEquals(3, socialNetwork.applyEdgeDeltas(deltas.toString()));
+        Files.delete(deltas);
+        assertEquals(1, socialNetwork.getShortestPathUnweighted(123, 456));
+        assertEquals(6, socialNetwork.pendingEdgeDeltas());
+        assertEquals(6, socialNetwork.compactEdgeDeltas());
+        assertEquals(0, socialNetwork.pendingEdgeDeltas());
+        assertEquals(1, socialNetwork.getShortestPathUnweighted(123, 456));
+    }
+
+    @Test
+    public void compactionRejected() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.CSR);
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        try {
+            socialNetwork.setCompaction(2, null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // No executor to compact on
+        }
+
+        // A rejected compaction leaves the changes pending
+        socialNetwork.setCompaction(2, task -> {
+            throw new RejectedExecutionException();
+        });
+        socialNetwork.addFriendship(123, 456, 0.5);
+        assertEquals(1, socialNetwork.getShortestPathUnweighted(123, 456));
+        assertEquals(2, socialNetwork.pendingEdgeDeltas());
+
+        // and the next change queues it again
+        socialNetwork.setCompaction(2, Runnable::run);
+        socialNetwork.removeFriendship(123, 456);
+        assertEquals(0, socialNetwork.pendingEdgeDeltas());
+        assertEquals(3, socialNetwork.getShortestPathUnweighted(123, 456));
+    }
+
+    @Test
+    public void recommendationByDistanceCached() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        socialNetwork.setNeighborhoodCache(100000);
+        List<Integer> first = socialNetwork.recommendationByDistance(2, 123);
+        List<Integer> hit = socialNetwork.recommendationByDistance(2, 123);
+        assertEquals(first, hit);
+        assertEquals(1, socialNetwork.neighborhoodCache().hits());
+        assertEquals(1, socialNetwork.neighborhoodCache().misses());
+
+        // A hit is in search order, the user first, and the caller's own copy
+        assertEquals(Integer.valueOf(123), hit.get(0));
+        hit.clear();
+        assertEquals(first, socialNetwork.recommendationByDistance(2, 123));
+
+        // A new friend of user 123 must show up in the next answer
+        assertFalse(first.contains(456));
+        socialNetwork.addFriendship(123, 456, 0.5);
+        assertTrue(socialNetwork.recommendationByDistance(2, 123).contains(456));
+        assertEquals(1, socialNetwork.neighborhoodCache().invalidations());
+    }
+
+    @Test
+    public void landmarkDistanceBounds() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        socialNetwork.buildLandmarkOracle(16, true);
+        int[] bounds = socialNetwork.distanceBounds(123, 456);
+        assertTrue(bounds[0] <= 3 && 3 <= bounds[1]);
+
+        socialNetwork.setApproximateDistances(true);
+        assertEquals(bounds[1], socialNetwork.getShortestPathUnweighted(123, 456));
+        socialNetwork.setApproximateDistances(false);
+        assertEquals(3, socialNetwork.getShortestPathUnweighted(123, 456));
+    }
+
+    @Test
+    public void landmarkFreeComponent() throws IOException {
+        // The path 1-2-3-4-5 takes the only landmark, 2; the path 6-7-8
+        // gets none
+        SocialNetwork socialNetwork = new SocialNetwork();
+        Path graph = Files.createTempFile("friends", ".mtx");
+        Files.write(graph, Arrays.asList("8 8 6",
+                "1 2 1", "2 3 1", "3 4 1", "4 5 1", "6 7 1", "7 8 1"));
+        socialNetwork.loadGraphFromDataSet(graph.toString());
+        Files.delete(graph);
+        socialNetwork.buildLandmarkOracle(1, true);
+        socialNetwork.setApproximateDistances(true);
+
+        // Connected users outside the landmark's component are searched
+        assertEquals(2, socialNetwork.getShortestPathUnweighted(6, 8));
+        assertArrayEquals(new int[] {2, 2}, socialNetwork.distanceBounds(8, 6));
+        Map<Integer, List<Integer>> clusters = new HashMap<>();
+        clusters.put(9, Arrays.asList(1, 8, 7));
+        assertEquals(Arrays.asList(7, 8, 1), socialNetwork.recommendationByInterest(9, 6, clusters));
+
+        // while the landmark still separates the components, and bounds
+        // paths inside its own
+        assertEquals(Integer.MAX_VALUE, socialNetwork.getShortestPathUnweighted(1, 6));
+        assertEquals(Integer.MAX_VALUE, socialNetwork.getShortestPathUnweighted(8, 3));
+        assertEquals(4, socialNetwork.getShortestPathUnweighted(1, 5));
+        assertEquals(Arrays.asList(1, 8, 7), socialNetwork.recommendationByInterest(9, 3,
+                Collections.singletonMap(9, Arrays.asList(8, 7, 1))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void landmarkTableTooLarge() {
+        // 50,000 landmarks on 50,000 users would need 2.5 billion distances
+        LandmarkOracle.build(new GraphCSR(50000, new EdgeList()), 50000, true, 1, null);
+    }
+
+    @Test
+    public void getShortestPathWeightedTest() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        // Every friendship is at least one hop long
+        double weighted = socialNetwork.getShortestPathWeighted(123, 456);
+        assertTrue(weighted >= socialNetwork.getShortestPathUnweighted(123, 456));
+        assertEquals(weighted, socialNetwork.getShortestPathWeighted(456, 123), 1e-9);
+
+        List<Integer> near = socialNetwork.recommendationByWeightedDistance(weighted, 123);
+        assertEquals(Integer.valueOf(123), near.get(0));
+        assertTrue(near.contains(456));
+        assertFalse(socialNetwork.recommendationByWeightedDistance(weighted - 0.01, 123)
+                .contains(456));
+    }
+
+    @Test
+    public void recommendFriendsTest() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.CSR);
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        List<Integer> friends = socialNetwork.recommendationByDistance(2, 123);
+        List<Integer> recommended = socialNetwork.recommendFriends(123, 10);
+        assertEquals(10, recommended.size());
+        for (int user : recommended) {
+            // Two hops away, never the user or an existing friend
+            assertFalse(friends.contains(user));
+            assertEquals(2, socialNetwork.getShortestPathUnweighted(123, user));
+        }
+        assertEquals(10, socialNetwork.recommendFriends(123, 10, true).size());
+
+        // An unbounded k ranks every user exactly two hops away
+        List<Integer> all = socialNetwork.recommendFriends(123, Integer.MAX_VALUE);
+        int twoHops = socialNetwork.recommendationByDistance(3, 123).size() - friends.size();
+        assertEquals(twoHops, all.size());
+        assertEquals(recommended, all.subList(0, 10));
+    }
+
+    @Test
+    public void interfaceDefaults() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.CSR);
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+
+        ISocialNetwork minimal = withDefaults(socialNetwork);
+        for (int user : new int[] {1, 123, 1234, 4000}) {
+            assertEquals(socialNetwork.recommendFriends(user, 25, false),
+                    minimal.recommendFriends(user, 25, false));
+        }
+        assertEquals(0, minimal.recommendFriends(123, 0, false).size());
+        for (Runnable call : Arrays.<Runnable>asList(
+                () -> minimal.distancesFrom(123),
+                () -> minimal.getShortestPathWeighted(123, 456),
+                () -> minimal.recommendationByWeightedDistance(1.0, 123),
+                () -> minimal.recommendFriends(123, 10, true))) {
+            try {
+                call.run();
+                fail("expected UnsupportedOperationException");
+            } catch (UnsupportedOperationException e) {
+                // The default cannot answer without more of the graph
+            }
+        }
+    }
+
+    // An implementation with only the abstract methods, which it takes from
+    // socialNetwork, and the interface's defaults for the rest
+    private static ISocialNetwork withDefaults(SocialNetwork socialNetwork) {
+        return (ISocialNetwork) Proxy.newProxyInstance(
+                ISocialNetwork.class.getClassLoader(), new Class<?>[] {ISocialNetwork.class},
+                (proxy, method, args) -> method.isDefault()
+                        ? InvocationHandler.invokeDefault(proxy, method, args)
+                        : method.invoke(socialNetwork, args));
+    }
+
+    @Test
+    public void recommendationBatch() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.setStorage(SocialNetwork.Storage.CSR);
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        RecommendationBatch batch = socialNetwork.recommendationBatch(new ForkJoinPool(4));
+
+        // Rows arrive on pool threads; copy each before the buffer is reused
+        Map<Integer, List<Integer>> neighborhoods = new ConcurrentHashMap<>();
+        Map<Integer, List<Integer>> friends = new ConcurrentHashMap<>();
+        RecommendationBatch.Report report = batch.neighborhoods(2, 0, 300,
+                (user, users, count) -> neighborhoods.put(user, toList(users, count)));
+        batch.friends(5, true, 0, 300,
+                (user, users, count) -> friends.put(user, toList(users, count)));
+
+        // User 0 has no friends and is skipped, as it is not a user
+        assertEquals(299, report.users());
+        assertFalse(neighborhoods.containsKey(0));
+        for (int user = 1; user < 300; user++) {
+            assertEquals(socialNetwork.recommendationByDistance(2, user), neighborhoods.get(user));
+            assertEquals(socialNetwork.recommendFriends(user, 5, true), friends.get(user));
+        }
+    }
+
+    private static List<Integer> toList(int[] users, int count) {
+        List<Integer> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(users[i]);
+        }
+        return list;
+    }
+
     @Test
     public void getShortestPathUnweightedTest() {
         SocialNetwork socialNetwork = new SocialNetwork();
         socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
         int shortestPathUnweighted = socialNetwork.getShortestPathUnweighted(123, 456);
-        assertEquals(8, shortestPathUnweighted);
+        assertEquals(3, shortestPathUnweighted);
+    }
+
+    @Test
+    public void getShortestPathBidirectionalTest() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        socialNetwork.setTraversal(SocialNetwork.Traversal.BIDIRECTIONAL);
+        assertEquals(3, socialNetwork.getShortestPathUnweighted(123, 456));
+        assertEquals(0, socialNetwork.getShortestPathUnweighted(456, 456));
+    }
+
+    @Test
+    public void distancesFromTest() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        int[] distances = socialNetwork.distancesFrom(123);
+        assertEquals(0, distances[123]);
+        assertEquals(socialNetwork.getShortestPathUnweighted(123, 456), distances[456]);
     }
 
     @Test
@@ -31,6 +490,37 @@ public class SocialNetworkTest {
         assertEquals(438, recommendation.size());
     }
 
+    @Test
+    public void recommendationByDistanceDirectionOptimizing() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        socialNetwork.setTraversal(SocialNetwork.Traversal.DIRECTION_OPTIMIZING);
+        List<Integer> recommendation = socialNetwork.recommendationByDistance(3, 1234);
+        assertEquals(438, recommendation.size());
+    }
+
+    @Test
+    public void recommendationByDistanceParallel() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        socialNetwork.setTraversal(SocialNetwork.Traversal.PARALLEL);
+        socialNetwork.setParallelism(ForkJoinPool.commonPool(), 16);
+        List<Integer> recommendation = socialNetwork.recommendationByDistance(3, 1234);
+        assertEquals(438, recommendation.size());
+        assertEquals(3, socialNetwork.distancesFrom(123)[456]);
+
+        // A pool of its own lists the same users, each level sorted
+        socialNetwork.setParallelism(new ForkJoinPool(2), 16);
+        List<Integer> own = socialNetwork.recommendationByDistance(3, 1234);
+        assertEquals(recommendation, own);
+        int[] distances = socialNetwork.distancesFrom(1234);
+        for (int i = 1; i < own.size(); i++) {
+            int previous = distances[own.get(i - 1)];
+            assertTrue(previous < distances[own.get(i)]
+                    || previous == distances[own.get(i)] && own.get(i - 1) < own.get(i));
+        }
+    }
+
     @Test
     public void loadUserInterestsTest() {
         SocialNetwork socialNetwork = new SocialNetwork();
@@ -67,6 +557,64 @@ public class SocialNetworkTest {
 
     }
 
+    @Test
+    public void loadInterestTable() throws IOException {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        UserInterests table = socialNetwork.loadInterestTable("./data/interests.txt");
+        assertEquals(socialNetwork.loadUserInterests("./data/interests.txt"), table.toMap());
+        assertEquals(0, table.malformedCount());
+
+        // Bad lines are reported by number and the rest still load
+        Path file = Files.createTempFile("interests", ".txt");
+        Files.write(file, Arrays.asList("1=[2, 3]", "x=[1]", "4=[5,", "6=[]"));
+        table = socialNetwork.loadInterestTable(file.toString());
+        Files.delete(file);
+        assertArrayEquals(new int[] {2, 3}, table.interestsOf(1));
+        assertTrue(table.hasUser(6));
+        assertFalse(table.hasUser(4));
+        assertArrayEquals(new int[] {2, 3}, table.malformedLines());
+
+        // Outlying user IDs load like any other, without an array slot for
+        // every smaller ID; the last line of a user still wins
+        Files.write(file, Arrays.asList("1=[2, 3]", "999999999=[1]", "2147483647=[7, 8]",
+                "6=[]", "999999999=[4]"));
+        table = socialNetwork.loadInterestTable(file.toString());
+        assertEquals(socialNetwork.loadUserInterests(file.toString()), table.toMap());
+        Files.delete(file);
+        assertEquals(4, table.userCount());
+        assertTrue(table.userBound() < 1 << 20);
+        assertArrayEquals(new int[] {999999999, Integer.MAX_VALUE}, table.sparseUsers());
+        assertArrayEquals(new int[] {4}, table.interestsOf(999999999));
+        assertArrayEquals(new int[] {7, 8}, table.interestsOf(Integer.MAX_VALUE));
+        assertArrayEquals(new int[] {2, 3}, table.interestsOf(1));
+        assertFalse(table.hasUser(999999998));
+        assertEquals(0, table.interestCount(999999998));
+        assertEquals(Arrays.asList(4), table.toMap().get(999999999));
+    }
+
+    @Test
+    public void interestIndex() {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        socialNetwork.loadGraphFromDataSet("./data/socfb-American75.mtx");
+        Map<Integer, List<Integer>> clusteredUsers = socialNetwork.clusterUserByInterest(
+                socialNetwork.loadUserInterests("./data/interests.txt"));
+        InterestIndex index = socialNetwork.loadInterestIndex("./data/interests.txt");
+        // A user listing an interest twice is counted once
+        assertEquals(new HashSet<>(clusteredUsers.get(0)).size(), index.cardinality(0));
+        assertEquals(new HashSet<>(clusteredUsers.get(2)).size(), index.cardinality(2));
+        assertTrue(index.hasInterest(1, 8));
+        assertEquals(index.cardinality(2) + index.cardinality(3),
+                index.anyOf(2, 3).cardinality() + index.allOf(2, 3).cardinality());
+
+        List<Integer> near = socialNetwork.recommendationByDistance(3, 123);
+        List<Integer> both = socialNetwork.recommendationByDistanceAndInterests(3, 123, index, 2, 3);
+        for (int user : near) {
+            boolean shared = clusteredUsers.get(2).contains(user)
+                    && clusteredUsers.get(3).contains(user);
+            assertEquals(shared, both.contains(user));
+        }
+    }
+
     @Test
     public void recommendationByInterest() {
         SocialNetwork socialNetwork = new SocialNetwork();
@@ -76,7 +624,7 @@ public class SocialNetworkTest {
         List<Integer> recommendToUser1 = 
                 socialNetwork.recommendationByInterest(3, 123, interestsByUser);
         assertEquals(4, recommendToUser1.size());
-        List<Integer> expectedList2 = Arrays.asList(1, 9, 15, 2);
+        List<Integer> expectedList2 = Arrays.asList(2, 1, 9, 15);
         assertEquals(expectedList2, recommendToUser1);
     }
     
@@ -102,6 +650,262 @@ public class SocialNetworkTest {
         }
     }
     
+    @Test
+    public void loadLikes() throws IOException {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        Path file = Files.createTempFile("posts", ".txt");
+        Files.write(file, Arrays.asList(
+                "1=[7 & 2023-01-01T00:00:00Z, 8 & 2023-03-01T00:00:00Z]",
+                "2=[7 & 2023-02-01T00:00:00Z]",
+                "3=[]"));
+        LikeStore likes = socialNetwork.loadLikes(file.toString());
+        Map<Integer, List<LikedPost>> byUser =
+                socialNetwork.postByUser(socialNetwork.loadPosts(file.toString()));
+        Files.delete(file);
+
+        assertEquals(3, likes.likeCount());
+        assertTrue(likes.hasPost(3));
+        assertEquals(2, likes.likerCount(1));
+        // User 7 liked post 2 most recently
+        assertEquals(2, likes.endLike(7) - likes.firstLike(7));
+        assertEquals(2, likes.postAt(likes.firstLike(7)));
+        assertEquals(7, likes.userAt(likes.firstLike(7)));
+        assertEquals(byUser.get(7).toString(), likes.likesOf(7).toString());
+
+        // Only the like of post 2 falls in February
+        long feb1 = Instant.parse("2023-02-01T00:00:00Z").toEpochMilli();
+        long mar1 = Instant.parse("2023-03-01T00:00:00Z").toEpochMilli();
+        List<LikedPost> february = likes.likesOf(7, feb1, mar1);
+        assertEquals(1, february.size());
+        assertEquals(2, february.get(0).getPostId());
+        assertEquals(1, likes.postAt(likes.firstBefore(7, feb1)));
+    }
+
+    @Test
+    public void liveLikes() {
+        long day = Duration.ofDays(1).toMillis();
+        MutableClock clock = new MutableClock(7 * day);
+        LiveLikes likes = new LiveLikes(2, 8, Duration.ofDays(30), clock);
+        likes.append(10, 1, 5 * day);
+        likes.append(11, 1, 7 * day);
+        likes.append(12, 1, 6 * day);
+
+        // User 1 keeps its two latest likes, newest first
+        List<LikedPost> recent = likes.likesOf(1);
+        assertEquals(2, recent.size());
+        assertEquals(11, recent.get(0).getPostId());
+        assertEquals(12, recent.get(1).getPostId());
+
+        // On day 40 the like of day 5 is past retention
+        clock.millis = 40 * day;
+        likes.append(10, 2, 40 * day);
+        assertArrayEquals(new int[] {2}, likes.likersOf(10));
+
+        // Likes dated a day ahead of the clock or before retention are
+        // counted and dropped, and do not move the retention period
+        likes.append(13, 3, 41 * day);
+        likes.append(14, 3, 9 * day);
+        assertEquals(0, likes.likesOf(3).size());
+        assertEquals(2, likes.droppedCount());
+        assertEquals(4, likes.appendedCount());
+        likes.expire();
+        assertEquals(0, likes.likesOf(1).size());
+        assertEquals(1, likes.likesOf(2).size());
+
+        // Large, sparse IDs take one entry each, and expire() releases them
+        likes.append(Integer.MAX_VALUE, Integer.MAX_VALUE, 40 * day);
+        likes.append(Integer.MAX_VALUE - 1, 1_000_000_000, 40 * day);
+        assertArrayEquals(new int[] {Integer.MAX_VALUE}, likes.likersOf(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE - 1, likes.likesOf(1_000_000_000).get(0).getPostId());
+        assertEquals(6, likes.rowCount());
+        clock.millis = 80 * day;
+        likes.expire();
+        assertEquals(0, likes.rowCount());
+    }
+
+    @Test
+    public void recommendPostLive() throws IOException, InterruptedException {
+        SocialNetwork socialNetwork = new SocialNetwork();
+        Path graph = Files.createTempFile("friends", ".mtx");
+        Files.write(graph, Arrays.asList("4 4 3", "1 2 1", "1 3 1", "3 4 1"));
+        socialNetwork.loadGraphFromDataSet(graph.toString());
+        Files.delete(graph);
+        Instant now = Instant.parse("2023-05-05T00:00:00Z");
+        LiveLikes likes = new LiveLikes(16, 16, Duration.ofDays(7),
+                Clock.fixed(now, ZoneId.of("UTC")));
+        Instant earliest = now.minus(Duration.ofDays(1));
+
+        // Each like shows up in the very next feed
+        assertEquals(0, socialNetwork.recommendPost(1, earliest, likes, 10).size());
+        likes.append(30, 2, now.minusSeconds(60).toEpochMilli());
+        likes.append(31, 4, now.minusSeconds(50).toEpochMilli());
+        assertEquals(Arrays.asList(30),
+                new ArrayList<>(socialNetwork.recommendPost(1, earliest, likes, 10).keySet()));
+        likes.append(31, 3, now.minusSeconds(30).toEpochMilli());
+        Map<Integer, List<Integer>> feed = socialNetwork.recommendPost(1, earliest, likes, 10);
+        assertEquals(Arrays.asList(31, 30), new ArrayList<>(feed.keySet()));
+        assertEquals(Arrays.asList(3), feed.get(31));
+
+        // and to a reader on another thread
+        boolean[] seen = new boolean[1];
+        Thread reader = new Thread(() -> {
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (!seen[0] && System.nanoTime() < deadline) {
+                seen[0] = socialNetwork.recommendPost(1, earliest, likes, 10).containsKey(32);
+            }
+        });
+        reader.start();
+        likes.append(32, 2, now.toEpochMilli());
+        reader.join();
+        assertTrue(seen[0]);
+    }
+
+    // A clock the test sets by hand
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+
+        MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    @Test
+    public void recommendPostMerge() throws IOException {
+        // User 1 is friends with 2, 3 and 4; 4 has never liked anything and
+        // 5 is not a friend
+        SocialNetwork socialNetwork = new SocialNetwork();
+        Path graph = Files.createTempFile("friends", ".mtx");
+        Files.write(graph, Arrays.asList("5 5 4", "1 2 1", "1 3 1", "1 4 1", "2 5 1"));
+        socialNetwork.loadGraphFromDataSet(graph.toString());
+        Path posts = Files.createTempFile("posts", ".txt");
+        Files.write(posts, Arrays.asList(
+                "10=[2 & 2023-01-03T00:00:00Z, 3 & 2023-01-01T00:00:00Z]",
+                "11=[3 & 2023-01-05T00:00:00Z]",
+                "12=[2 & 2023-01-02T00:00:00Z]",
+                "13=[2 & 2022-06-01T00:00:00Z]",
+                "14=[5 & 2023-01-04T00:00:00Z]"));
+        Map<Integer, List<LikedPost>> likes =
+                socialNetwork.postByUser(socialNetwork.loadPosts(posts.toString()));
+        Files.delete(graph);
+        Files.delete(posts);
+        Instant earliest = Instant.parse("2022-12-31T00:00:00Z");
+
+        // Newest like first; post 13 is too old and post 14 not a friend's
+        Map<Integer, List<Integer>> feed = socialNetwork.recommendPost(1, earliest, likes);
+        assertEquals(Arrays.asList(11, 10, 12), new ArrayList<>(feed.keySet()));
+        assertEquals(Arrays.asList(3), feed.get(11));
+        assertEquals(Arrays.asList(2, 3), feed.get(10));
+        assertEquals(Arrays.asList(2), feed.get(12));
+
+        // A page ends before post 12 but still lists 3, who liked post 10
+        // after 2 liked post 12; it matches the default of the interface
+        Map<Integer, List<Integer>> page = socialNetwork.recommendPost(1, earliest, likes, 2);
+        assertEquals(Arrays.asList(11, 10), new ArrayList<>(page.keySet()));
+        assertEquals(Arrays.asList(2, 3), page.get(10));
+        ISocialNetwork defaults = withDefaults(socialNetwork);
+        for (int limit = 0; limit <= 4; limit++) {
+            assertEquals(new ArrayList<>(defaults.recommendPost(1, earliest, likes, limit).entrySet()),
+                    new ArrayList<>(socialNetwork.recommendPost(1, earliest, likes, limit).entrySet()));
+        }
+        assertEquals(0, socialNetwork.recommendPost(1, earliest, likes, 0).size());
+    }
+
+    @Test
+    public void networkActivity() throws IOException {
+        // A path 4 - 3 - 2 - 1 - 5: users 2, 3 and 5 are within two hops of 1
+        SocialNetwork socialNetwork = new SocialNetwork();
+        Path graph = Files.createTempFile("friends", ".mtx");
+        Files.write(graph, Arrays.asList("5 5 4", "1 2 1", "2 3 1", "3 4 1", "1 5 1"));
+        socialNetwork.loadGraphFromDataSet(graph.toString());
+        Path posts = Files.createTempFile("posts", ".txt");
+        Files.write(posts, Arrays.asList(
+                "20=[2 & 2023-01-10T00:00:00Z, 3 & 2023-01-15T00:00:00Z]",
+                "21=[5 & 2023-01-20T00:00:00Z, 2 & 2023-01-19T00:00:00Z]",
+                "22=[4 & 2023-01-15T00:00:00Z]",
+                "23=[1 & 2023-01-16T00:00:00Z]",
+                "24=[3 & 2023-01-09T00:00:00Z]",
+                "25=[5 & 2023-01-12T00:00:00Z]"));
+        LikeStore likes = socialNetwork.loadLikes(posts.toString());
+        Map<Integer, List<LikedPost>> byUser =
+                socialNetwork.postByUser(socialNetwork.loadPosts(posts.toString()));
+        Files.delete(graph);
+        Files.delete(posts);
+        Instant from = Instant.parse("2023-01-10T00:00:00Z");
+        Instant to = Instant.parse("2023-01-20T00:00:00Z");
+
+        // From is inclusive and to exclusive; user 4 is three hops away and
+        // the user's own likes do not count
+        Map<Integer, List<Integer>> activity =
+                socialNetwork.networkActivity(1, 2, from, to, likes, Integer.MAX_VALUE);
+        assertEquals(Arrays.asList(21, 20, 25), new ArrayList<>(activity.keySet()));
+        assertEquals(Arrays.asList(3, 2), activity.get(20));
+        assertEquals(Arrays.asList(2), activity.get(21));
+
+        // Every window and distance agrees with filtering and sorting
+        for (int hops = 0; hops <= 4; hops++) {
+            for (int start = 8; start <= 21; start++) {
+                for (int end = start; end <= 21; end += 3) {
+                    Instant a = from.plus(Duration.ofDays(start - 10));
+                    Instant b = from.plus(Duration.ofDays(end - 10));
+                    assertEquals(
+                            new ArrayList<>(bruteForceActivity(socialNetwork, byUser, 1, hops, a, b)
+                                    .entrySet()),
+                            new ArrayList<>(socialNetwork.networkActivity(1, hops, a, b, likes,
+                                    Integer.MAX_VALUE).entrySet()));
+                }
+            }
+        }
+
+        // The store gives the same feed as the lists, in the same order
+        assertEquals(new ArrayList<>(socialNetwork.recommendPost(1, from, byUser).entrySet()),
+                new ArrayList<>(socialNetwork.recommendPost(1, from, likes, Integer.MAX_VALUE)
+                        .entrySet()));
+        assertEquals(new ArrayList<>(socialNetwork.recommendPost(2, from, byUser, 1).entrySet()),
+                new ArrayList<>(socialNetwork.recommendPost(2, from, likes, 1).entrySet()));
+    }
+
+    // Likes of users 1 to hops away in [from, to), newest first, grouped
+    private static Map<Integer, List<Integer>> bruteForceActivity(SocialNetwork network,
+            Map<Integer, List<LikedPost>> byUser, int userId, int hops, Instant from, Instant to) {
+        List<LikedPost> window = new ArrayList<>();
+        for (Map.Entry<Integer, List<LikedPost>> user : byUser.entrySet()) {
+            int distance = network.getShortestPathUnweighted(userId, user.getKey());
+            if (user.getKey() != userId && distance >= 1 && distance <= hops) {
+                for (LikedPost like : user.getValue()) {
+                    if (!like.getTimestamp().isBefore(from) && like.getTimestamp().isBefore(to)) {
+                        window.add(like);
+                    }
+                }
+            }
+        }
+        Collections.sort(window);
+        Map<Integer, List<Integer>> activity = new LinkedHashMap<>();
+        for (LikedPost like : window) {
+            activity.computeIfAbsent(like.getPostId(), post -> new ArrayList<>())
+                    .add(like.getUserId());
+        }
+        return activity;
+    }
+
     @Test
     public void recommendPostTest() {
         SocialNetwork socialNetwork = new SocialNetwork();
@@ -117,8 +921,12 @@ public class SocialNetworkTest {
         
         
         Instant timestamp = instant.minusSeconds(seconds); 
-        int size = socialNetwork.recommendPost(2, timestamp, res).keySet().size();
-        assertEquals(680, size);
+        Map<Integer, List<Integer>> feed = socialNetwork.recommendPost(2, timestamp, res);
+        assertEquals(680, feed.keySet().size());
+
+        // A page of the feed is the start of the full feed
+        Map<Integer, List<Integer>> page = socialNetwork.recommendPost(2, timestamp, res, 10);
+        assertEquals(new ArrayList<>(feed.keySet()).subList(0, 10), new ArrayList<>(page.keySet()));
         
     }
     
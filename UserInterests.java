@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The interests of every user, parsed from a file of lines such as
+ *
+ *   123=[4, 8, 15]
+ *
+ * and stored in compressed row form: the interests of user u are
+ * interests[offsets[u]] .. interests[offsets[u + 1] - 1], in file order.
+ * Two int arrays replace a map of boxed lists.
+ *
+ * The rows are indexed by user ID up to a bound of a few times the number
+ * of lines, which dense IDs never reach. Users above it, such as a stray
+ * 999999999=[1], are kept in a sorted list of their own and found by
+ * binary search, so one outlier costs one entry rather than an array
+ * slot for every smaller ID.
+ *
+ * The file is streamed through one reused buffer and parsed byte by byte
+ * by a small state machine, so no String is created per line. A line that
+ * does not have the form id=[a, b, ...] (non-negative integers, spaces
+ * allowed between tokens, an empty list allowed) is skipped and its line
+ * number recorded instead of aborting the load. When a user appears on
+ * more than one line, the last line wins, as it does for a map.
+ */
+public class UserInterests {
+
+    // Bytes read from the file at a time
+    private static final int BLOCK = 1 << 20;
+
+    // Line numbers of malformed lines kept for reporting; more are counted
+    private static final int MAX_REPORTED = 1000;
+
+    // Parser states
+    private static final int LINE_START   = 0;
+    private static final int USER         = 1;
+    private static final int BEFORE_EQUAL = 2;
+    private static final int BEFORE_LIST  = 3;
+    private static final int LIST_START   = 4;
+    private static final int INTEREST     = 5;
+    private static final int AFTER_ITEM   = 6;
+    private static final int BEFORE_ITEM  = 7;
+    private static final int LINE_END     = 8;
+    private static final int MALFORMED    = 9;
+
+    // Smallest bound of the rows indexed by user ID
+    private static final int MIN_DENSE = 1 << 16;
+
+    private final int[]     offsets;
+    private final int[]     interests;
+    private final boolean[] present;
+    // Users at or above the dense bound, ascending, and the ends of their
+    // rows, which follow the dense rows in interests
+    private final int[]     sparseUsers;
+    private final int[]     sparseEnds;
+    private final int       users;
+    private final int       malformed;
+    private final int[]     malformedLines;
+
+
+    private UserInterests(int[] offsets, int[] interests, boolean[] present,
+            int[] sparseUsers, int[] sparseEnds, int users, int malformed,
+            int[] malformedLines) {
+        this.offsets = offsets;
+        this.interests = interests;
+        this.present = present;
+        this.sparseUsers = sparseUsers;
+        this.sparseEnds = sparseEnds;
+        this.users = users;
+        this.malformed = malformed;
+        this.malformedLines = malformedLines;
+    }
+
+
+    /**
+     * Parse an interests file
+     *
+     * @param path the file
+     * @return the interests of every user in the file
+     * @throws IOException if the file cannot be read
+     */
+    public static UserInterests read(Path path) throws IOException {
+        Parser parser = new Parser();
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(BLOCK);
+            while (in.read(block) >= 0) {
+                block.flip();
+                parser.feed(block.array(), block.limit());
+                block.clear();
+            }
+        }
+        parser.endOfLine();
+        return parser.build();
+    }
+
+
+    /**
+     * @return the bound of the rows indexed by user ID: one more than the
+     *         largest user ID in the file, unless sparseUsers() lists some
+     */
+    public int userBound() {
+        return present.length;
+    }
+
+
+    /**
+     * @return the users at or above userBound(), ascending
+     */
+    public int[] sparseUsers() {
+        return sparseUsers.clone();
+    }
+
+
+    /**
+     * @return the number of distinct users in the file
+     */
+    public int userCount() {
+        return users;
+    }
+
+
+    /**
+     * @param userId a user
+     * @return true iff the file has a line for the user
+     */
+    public boolean hasUser(int userId) {
+        return userId >= 0 && (userId < present.length
+                ? present[userId] : Arrays.binarySearch(sparseUsers, userId) >= 0);
+    }
+
+
+    /**
+     * @param userId a user
+     * @return the number of interests of the user
+     */
+    public int interestCount(int userId) {
+        return end(userId) - start(userId);
+    }
+
+
+    /**
+     * @param userId a user
+     * @return the interests of the user, in file order
+     */
+    public int[] interestsOf(int userId) {
+        return Arrays.copyOfRange(interests, start(userId), end(userId));
+    }
+
+
+    // The row of a user in interests; empty for a user not in the file
+    private int start(int userId) {
+        if (userId >= 0 && userId < present.length) {
+            return offsets[userId];
+        }
+        int i = userId < 0 ? -1 : Arrays.binarySearch(sparseUsers, userId);
+        return i < 0 ? 0 : i == 0 ? offsets[present.length] : sparseEnds[i - 1];
+    }
+
+
+    private int end(int userId) {
+        if (userId >= 0 && userId < present.length) {
+            return offsets[userId + 1];
+        }
+        int i = userId < 0 ? -1 : Arrays.binarySearch(sparseUsers, userId);
+        return i < 0 ? 0 : sparseEnds[i];
+    }
+
+
+    // The row arrays, for building other indexes without copying
+    int[] offsets() {
+        return offsets;
+    }
+
+
+    int[] interests() {
+        return interests;
+    }
+
+
+    /**
+     * @return the number of lines that could not be parsed
+     */
+    public int malformedCount() {
+        return malformed;
+    }
+
+
+    /**
+     * @return the 1-based numbers of the first malformed lines, at most
+     *         1000 of them
+     */
+    public int[] malformedLines() {
+        return malformedLines.clone();
+    }
+
+
+    /**
+     * @return the same map loadUserInterests() builds: every user in the
+     *         file mapped to its list of interests
+     */
+    public Map<Integer, List<Integer>> toMap() {
+        Map<Integer, List<Integer>> map = new HashMap<>();
+        for (int user = 0; user < present.length; user++) {
+            if (present[user]) {
+                List<Integer> list = new ArrayList<>(offsets[user + 1] - offsets[user]);
+                for (int i = offsets[user]; i < offsets[user + 1]; i++) {
+                    list.add(interests[i]);
+                }
+                map.put(user, list);
+            }
+        }
+        for (int user : sparseUsers) {
+            List<Integer> list = new ArrayList<>(interestCount(user));
+            for (int interest : interestsOf(user)) {
+                list.add(interest);
+            }
+            map.put(user, list);
+        }
+        return map;
+    }
+
+
+    // Byte level parser; lines may span any number of feed() calls
+    private static final class Parser {
+        private int   state = LINE_START;
+        private long  value;
+        private int   user;
+        private int   line = 1;
+
+        // Every parsed line: its user and the end of its interests in items
+        private int[] lineUsers = new int[1024];
+        private int[] lineEnds  = new int[1024];
+        private int   lines;
+        private int[] items = new int[4096];
+        private int   itemCount;
+        private int   lineStart;
+        private int   maxUser = -1;
+
+        private int   malformed;
+        private int[] reported = new int[16];
+
+
+        void feed(byte[] bytes, int length) {
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (b == '\n') {
+                    endOfLine();
+                    continue;
+                }
+                boolean space = b == ' ' || b == '\t' || b == '\r';
+                boolean digit = b >= '0' && b <= '9';
+                switch (state) {
+                    case LINE_START:
+                        if (digit) {
+                            value = b - '0';
+                            state = USER;
+                        } else if (!space) {
+                            state = MALFORMED;
+                        }
+                        break;
+                    case USER:
+                    case INTEREST:
+                        if (digit) {
+                            value = 10 * value + (b - '0');
+                            if (value > Integer.MAX_VALUE) {
+                                state = MALFORMED;
+                            }
+                        } else {
+                            endNumber();
+                            state = state == USER ? BEFORE_EQUAL : AFTER_ITEM;
+                            i--; // Look at this byte again in the new state
+                        }
+                        break;
+                    case BEFORE_EQUAL:
+                        state = b == '=' ? BEFORE_LIST : space ? state : MALFORMED;
+                        break;
+                    case BEFORE_LIST:
+                        state = b == '[' ? LIST_START : space ? state : MALFORMED;
+                        break;
+                    case LIST_START:
+                    case BEFORE_ITEM:
+                        if (digit) {
+                            value = b - '0';
+                            state = INTEREST;
+                        } else if (b == ']' && state == LIST_START) {
+                            state = LINE_END;
+                        } else if (!space) {
+                            state = MALFORMED;
+                        }
+                        break;
+                    case AFTER_ITEM:
+                        state = b == ',' ? BEFORE_ITEM : b == ']' ? LINE_END
+                                : space ? state : MALFORMED;
+                        break;
+                    case LINE_END:
+                        state = space ? state : MALFORMED;
+                        break;
+                    default:
+                        // MALFORMED: skip to the end of the line
+                        break;
+                }
+            }
+        }
+
+
+        // Store the number just read as the user or as an interest
+        private void endNumber() {
+            if (state == USER) {
+                user = (int) value;
+                return;
+            }
+            if (itemCount == items.length) {
+                items = Arrays.copyOf(items, 2 * itemCount);
+            }
+            items[itemCount++] = (int) value;
+        }
+
+
+        void endOfLine() {
+            if (state == LINE_END) {
+                if (lines == lineUsers.length) {
+                    lineUsers = Arrays.copyOf(lineUsers, 2 * lines);
+                    lineEnds = Arrays.copyOf(lineEnds, 2 * lines);
+                }
+                lineUsers[lines] = user;
+                lineEnds[lines] = itemCount;
+                lines++;
+                maxUser = Math.max(maxUser, user);
+                lineStart = itemCount;
+            } else if (state != LINE_START) {
+                // Drop what the bad line added and note where it was
+                itemCount = lineStart;
+                if (malformed < MAX_REPORTED) {
+                    if (malformed == reported.length) {
+                        reported = Arrays.copyOf(reported, 2 * malformed);
+                    }
+                    reported[malformed] = line;
+                }
+                malformed++;
+            }
+            state = LINE_START;
+            line++;
+        }
+
+
+        UserInterests build() {
+            // Index rows by user ID up to a few slots per line; users above
+            // that are kept sparse
+            int n = (int) Math.min(maxUser + 1L, Math.max(4L * lines, MIN_DENSE));
+            // The last line of every user; a sparse user's lines sorted by
+            // user and then line
+            int[] last = new int[n];
+            Arrays.fill(last, -1);
+            long[] sparse = new long[0];
+            int sparseLines = 0;
+            for (int l = 0; l < lines; l++) {
+                if (lineUsers[l] < n) {
+                    last[lineUsers[l]] = l;
+                } else {
+                    if (sparseLines == sparse.length) {
+                        sparse = Arrays.copyOf(sparse, 2 * sparseLines + 1);
+                    }
+                    sparse[sparseLines++] = (long) lineUsers[l] << 32 | l;
+                }
+            }
+            Arrays.sort(sparse, 0, sparseLines);
+            int[] offsets = new int[n + 1];
+            boolean[] present = new boolean[n];
+            int users = 0;
+            for (int u = 0; u < n; u++) {
+                int l = last[u];
+                int count = 0;
+                if (l >= 0) {
+                    present[u] = true;
+                    users++;
+                    count = lineEnds[l] - (l == 0 ? 0 : lineEnds[l - 1]);
+                }
+                offsets[u + 1] = offsets[u] + count;
+            }
+            // The last line of every sparse user, and the end of its row
+            int[] sparseUsers = new int[sparseLines];
+            int[] sparseLast = new int[sparseLines];
+            int[] sparseEnds = new int[sparseLines];
+            int sparseCount = 0;
+            int end = offsets[n];
+            for (int i = 0; i < sparseLines; i++) {
+                int u = (int) (sparse[i] >>> 32);
+                if (i + 1 < sparseLines && (int) (sparse[i + 1] >>> 32) == u) {
+                    continue;
+                }
+                int l = (int) sparse[i];
+                end += lineEnds[l] - (l == 0 ? 0 : lineEnds[l - 1]);
+                sparseUsers[sparseCount] = u;
+                sparseLast[sparseCount] = l;
+                sparseEnds[sparseCount++] = end;
+            }
+            users += sparseCount;
+
+            int[] interests = new int[end];
+            for (int u = 0; u < n; u++) {
+                copyLine(last[u], interests, offsets[u]);
+            }
+            for (int i = 0; i < sparseCount; i++) {
+                copyLine(sparseLast[i], interests, i == 0 ? offsets[n] : sparseEnds[i - 1]);
+            }
+            return new UserInterests(offsets, interests, present,
+                    Arrays.copyOf(sparseUsers, sparseCount), Arrays.copyOf(sparseEnds, sparseCount),
+                    users, malformed, Arrays.copyOf(reported, Math.min(malformed, MAX_REPORTED)));
+        }
+
+
+        // Copy the interests of a line, if any, into a row
+        private void copyLine(int l, int[] interests, int at) {
+            if (l >= 0) {
+                int start = l == 0 ? 0 : lineEnds[l - 1];
+                System.arraycopy(items, start, interests, at, lineEnds[l] - start);
+            }
+        }
+    }
+}